@@ -116,6 +116,15 @@ public interface Binding<T> {
      */
     Binding<T> unshared();
 
+    /**
+     * Configure the binding so that one instance is shared within each
+     * {@linkplain InjectionScope injection scope}, and dropped when the scope exits.
+     *
+     * @return A newly configured binding
+     * @see CachePolicy#SCOPED
+     */
+    Binding<T> scoped();
+
     /**
      * Configure the binding so that its results are 'fixed'.  Fixed results will not be rewritten
      * by the dependency solver in rewrite mode.
@@ -176,7 +176,7 @@ public class BindingFunctionBuilder implements Cloneable {
      * @return
      */
     public BindingFunction build(RuleSet set) {
-        return new RuleBasedBindingFunction(getMap(set));
+        return new RuleBasedBindingFunction(getMap(set), set);
     }
     
     void addBindRule(RuleSet set, ContextMatcher context, BindRule rule) {
@@ -123,6 +123,11 @@ class BindingImpl<T> implements Binding<T> {
         return new BindingImpl<T>(context, sourceType, excludeTypes, qualifier, CachePolicy.NEW_INSTANCE, fixed);
     }
 
+    @Override
+    public Binding<T> scoped() {
+        return new BindingImpl<T>(context, sourceType, excludeTypes, qualifier, CachePolicy.SCOPED, fixed);
+    }
+
     @Override
     public Binding<T> fixed() {
         return new BindingImpl<T>(context, sourceType, excludeTypes, qualifier, cachePolicy, true);
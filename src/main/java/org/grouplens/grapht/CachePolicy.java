@@ -28,6 +28,16 @@ public enum CachePolicy {
      * dependency graph.
      */
     MEMOIZE,
+    /**
+     * Create one instance per {@linkplain InjectionScope scope}, such as a request or a batch
+     * job.  Instances are shared within a scope and dropped when it exits; getting a scoped
+     * instance outside of any scope is an error.  Since a memoized component outlives every
+     * scope, it may not depend on a scoped component except through an injected
+     * {@link javax.inject.Provider}.
+     *
+     * @since 0.9
+     */
+    SCOPED,
     /**
      * Injectors must create new instances at every request if possible,
      * effectively no caching.
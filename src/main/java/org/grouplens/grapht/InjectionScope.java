@@ -0,0 +1,208 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.util.MemoizingProvider;
+import org.grouplens.grapht.util.Preconditions;
+import org.grouplens.grapht.util.TypedProvider;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.inject.Provider;
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A scope for components with the {@link CachePolicy#SCOPED SCOPED} cache policy, such as a
+ * request or a batch job.  Scopes are bound to threads: {@link #enter()} makes a new scope the
+ * current scope of the calling thread, and {@link #exit()} drops it along with all the instances
+ * created in it, restoring the scope that was current before.  Scopes may be nested, in which
+ * case scoped components are memoized in the innermost scope.
+ * <p>
+ * Because scopes are bound to threads, work handed to other threads does not see the caller's
+ * scope unless it is wrapped with {@link #propagate(Runnable)}; the injector does this for the
+ * components it builds on executors.
+ *
+ * <pre>
+ * InjectionScope scope = InjectionScope.enter();
+ * try {
+ *     handler = injector.getInstance(RequestHandler.class);
+ *     ...
+ * } finally {
+ *     scope.exit();
+ * }
+ * </pre>
+ *
+ * @since 0.9
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public final class InjectionScope implements Closeable {
+    private static final ThreadLocal<InjectionScope> currentScope = new ThreadLocal<InjectionScope>();
+
+    @Nullable
+    private final InjectionScope enclosing;
+    private final Thread thread;
+    // the instances created in this scope, memoized per scoped provider, or null once it has
+    // exited.  Memoizing providers construct each instance once, even if threads sharing the
+    // scope race for it.
+    private volatile ConcurrentMap<Provider<?>, MemoizingProvider<?>> instances;
+
+    private InjectionScope(@Nullable InjectionScope enclosing) {
+        this.enclosing = enclosing;
+        thread = Thread.currentThread();
+        instances = new ConcurrentHashMap<Provider<?>, MemoizingProvider<?>>();
+    }
+
+    /**
+     * Enter a new scope on the current thread.
+     * @return The new scope.  It must be {@linkplain #exit() exited} on the same thread.
+     */
+    public static InjectionScope enter() {
+        InjectionScope scope = new InjectionScope(currentScope.get());
+        currentScope.set(scope);
+        return scope;
+    }
+
+    /**
+     * Get the current thread's innermost scope.
+     * @return The current scope, or {@code null} if the thread is not in a scope.
+     */
+    @Nullable
+    public static InjectionScope current() {
+        return currentScope.get();
+    }
+
+    /**
+     * Exit this scope, dropping the instances created in it.  This takes constant time, no
+     * matter how many instances the scope holds.
+     *
+     * @throws IllegalStateException if this is not the current thread's innermost scope.
+     */
+    public void exit() {
+        if (thread != Thread.currentThread() || currentScope.get() != this) {
+            throw new IllegalStateException("scope is not the current scope of this thread");
+        }
+        instances = null;
+        if (enclosing == null) {
+            currentScope.remove();
+        } else {
+            currentScope.set(enclosing);
+        }
+    }
+
+    /**
+     * Exit this scope.
+     * @see #exit()
+     */
+    @Override
+    public void close() {
+        exit();
+    }
+
+    /**
+     * Query whether this scope is still active.
+     * @return {@code true} if the scope has not been exited.
+     */
+    public boolean isActive() {
+        return instances != null;
+    }
+
+    /**
+     * Wrap a task so that it runs with this scope as the current scope, on whatever thread runs
+     * it.  The thread's own scope is restored when the task finishes.  If this scope has exited
+     * by then, scoped components used by the task fail as they would outside of any scope.
+     *
+     * @param task The task to wrap.
+     * @return A task running {@code task} in this scope.
+     */
+    public Runnable propagate(@Nonnull final Runnable task) {
+        Preconditions.notNull("task", task);
+        return new Runnable() {
+            @Override
+            public void run() {
+                InjectionScope saved = currentScope.get();
+                currentScope.set(InjectionScope.this);
+                try {
+                    task.run();
+                } finally {
+                    if (saved == null) {
+                        currentScope.remove();
+                    } else {
+                        currentScope.set(saved);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Wrap a provider so that it is memoized in the current scope.  Each scope gets its own
+     * instance, constructed once even if several threads in the scope request it at the same
+     * time; getting an instance outside of any scope fails.
+     *
+     * @param provider The provider to wrap.
+     * @param type The type of object provided.
+     * @param <T> The provided type.
+     * @return A provider that creates one instance per scope.
+     */
+    public static <T> Provider<T> scope(@Nonnull Provider<T> provider, @Nonnull Class<?> type) {
+        Preconditions.notNull("provider", provider);
+        Preconditions.notNull("type", type);
+        return new ScopedProvider<T>(provider, type);
+    }
+
+    private static class ScopedProvider<T> implements TypedProvider<T> {
+        private final Provider<T> wrapped;
+        private final Class<?> type;
+
+        public ScopedProvider(Provider<T> provider, Class<?> type) {
+            wrapped = provider;
+            this.type = type;
+        }
+
+        @Override
+        public Class<?> getProvidedType() {
+            return type;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get() {
+            InjectionScope scope = currentScope.get();
+            ConcurrentMap<Provider<?>, MemoizingProvider<?>> table =
+                    scope == null ? null : scope.instances;
+            if (table == null) {
+                throw new InjectionException(type, null, "no active injection scope");
+            }
+            MemoizingProvider<?> memo = table.get(this);
+            if (memo == null) {
+                MemoizingProvider<?> created = new MemoizingProvider<T>(wrapped, type);
+                memo = table.putIfAbsent(this, created);
+                if (memo == null) {
+                    memo = created;
+                }
+            }
+            // each entry has its own lock, so nested scoped components work
+            return (T) memo.get();
+        }
+    }
+}
@@ -70,4 +70,17 @@ public interface Injector {
      * @throws InjectionException if type cannot be instantiated
      */
     <T> T getInstance(Annotation qualifier, Class<T> type);
+
+    /**
+     * <p>
+     * Create a child injector with additional bindings.  The child is configured with this
+     * injector's bindings plus those of the given modules; where they conflict, the child's
+     * bindings win.  Components that the child's bindings do not affect are shared with this
+     * injector, including memoized instances, so a child only resolves and instantiates the
+     * part of the graph its bindings change.
+     *
+     * @param modules The modules configuring the child's additional bindings.
+     * @return A new child injector.
+     */
+    Injector createChild(Module... modules);
 }
@@ -19,14 +19,27 @@
 package org.grouplens.grapht;
 
 import org.grouplens.grapht.BindingFunctionBuilder.RuleSet;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
 import org.grouplens.grapht.solver.BindingFunction;
+import org.grouplens.grapht.solver.CyclicDependencyException;
 import org.grouplens.grapht.solver.DefaultDesireBindingFunction;
 import org.grouplens.grapht.solver.DefaultInjector;
+import org.grouplens.grapht.solver.MultipleBindingsException;
 import org.grouplens.grapht.solver.ProviderBindingFunction;
+import org.grouplens.grapht.solver.SolverException;
+import org.grouplens.grapht.solver.UnresolvableDependencyException;
 import org.grouplens.grapht.context.ContextPattern;
+import org.grouplens.grapht.util.Preconditions;
 import org.grouplens.grapht.util.Types;
 
+import javax.annotation.Nullable;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <p>
@@ -46,6 +59,11 @@ public class InjectorBuilder extends AbstractContext {
     private final BindingFunctionBuilder builder;
     private CachePolicy cachePolicy;
     private boolean enableProviderInjection;
+    private InstantiationBackend instantiationBackend;
+    private final List<Class<?>> eagerTypes;
+    @Nullable
+    private Executor initializationExecutor;
+    private ForkJoinPool resolutionPool;
 
     /**
      * Create a new injector builder.
@@ -56,6 +74,8 @@ public class InjectorBuilder extends AbstractContext {
         builder = bld;
         cachePolicy = CachePolicy.MEMOIZE;
         enableProviderInjection = false;
+        instantiationBackend = InstantiationBackend.REFLECTION;
+        eagerTypes = new ArrayList<Class<?>>();
     }
 
     /**
@@ -127,6 +147,62 @@ public class InjectorBuilder extends AbstractContext {
         return this;
     }
     
+    /**
+     * Set the backend used by the built injectors to invoke constructors and injection
+     * points.  The default is {@link InstantiationBackend#REFLECTION}.
+     *
+     * @param backend The instantiation backend
+     * @return This builder
+     * @throws NullPointerException if backend is null
+     */
+    public InjectorBuilder setInstantiationBackend(InstantiationBackend backend) {
+        Preconditions.notNull("backend", backend);
+        instantiationBackend = backend;
+        return this;
+    }
+    
+    /**
+     * Instantiate components eagerly when the injector is built.  The given types are resolved
+     * by {@link #build()}, and every memoized component in the resulting graph is constructed, so
+     * that the first requests for them do not pay for construction.  The timings of this
+     * construction are available from {@link DefaultInjector#getInitializationStats()}.
+     *
+     * @param types The types to resolve and instantiate at build time.
+     * @return This builder
+     * @see DefaultInjector#instantiateMemoized(Executor)
+     */
+    public InjectorBuilder preInstantiate(Class<?>... types) {
+        Collections.addAll(eagerTypes, types);
+        return this;
+    }
+
+    /**
+     * Set the executor used to construct {@linkplain #preInstantiate(Class[]) eagerly-instantiated}
+     * components.  Components that do not depend on each other are constructed in parallel.  The
+     * default, {@code null}, constructs them one at a time on the thread calling {@link #build()}.
+     *
+     * @param executor The executor for eager instantiation, or {@code null}.
+     * @return This builder
+     */
+    public InjectorBuilder setInitializationExecutor(@Nullable Executor executor) {
+        initializationExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Set the pool used to resolve dependencies.  With a pool, the dependencies of each component
+     * are resolved in parallel; the graph is the same as with sequential resolution.  The pool
+     * belongs to the caller, who can share it between injectors and must shut it down when done.
+     * The default, {@code null}, resolves dependencies on the thread requesting them.
+     *
+     * @param pool The pool for dependency resolution, or {@code null}.
+     * @return This builder
+     */
+    public InjectorBuilder setResolutionPool(@Nullable ForkJoinPool pool) {
+        resolutionPool = pool;
+        return this;
+    }
+
     @Override
     public <T> Binding<T> bind(Class<T> type) {
         return builder.getRootContext().bind(type);
@@ -203,6 +279,45 @@ public class InjectorBuilder extends AbstractContext {
             };
         }
         
-        return new DefaultInjector(cachePolicy, 100, functions);
+        DefaultInjector injector = new DefaultInjector(cachePolicy, 100, instantiationBackend,
+                                                       resolutionPool, functions);
+        if (!eagerTypes.isEmpty()) {
+            // resolve all the eager types together, so the graph is only rebuilt once
+            List<Desire> desires = new ArrayList<Desire>(eagerTypes.size());
+            for (Class<?> type: eagerTypes) {
+                desires.add(Desires.create(null, type, false));
+            }
+            try {
+                injector.preResolve(desires);
+            } catch (SolverException e) {
+                throw new InjectionException(getFailedType(e), null, e);
+            }
+            injector.instantiateMemoized(initializationExecutor);
+        }
+        return injector;
+    }
+
+    /**
+     * Get the type whose resolution failed, for reporting a failure to resolve the eager types.
+     * @param e The solver's exception.
+     * @return The type of the desire that could not be resolved, if the exception reports one;
+     *         otherwise, the eager type if there is only one, or {@code Object}.
+     */
+    private Class<?> getFailedType(SolverException e) {
+        Desire desire = null;
+        if (e instanceof UnresolvableDependencyException) {
+            desire = ((UnresolvableDependencyException) e).getDesire();
+        } else if (e instanceof CyclicDependencyException) {
+            desire = ((CyclicDependencyException) e).getDesire();
+        } else if (e instanceof MultipleBindingsException) {
+            desire = ((MultipleBindingsException) e).getDesire();
+        }
+        if (desire != null) {
+            return desire.getDesiredType();
+        } else if (eagerTypes.size() == 1) {
+            return eagerTypes.get(0);
+        } else {
+            return Object.class;
+        }
     }
 }
@@ -0,0 +1,39 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+/**
+ * The mechanism an injector uses to invoke constructors, setters and fields of the
+ * components it instantiates.
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ * @see InjectorBuilder#setInstantiationBackend(InstantiationBackend)
+ */
+public enum InstantiationBackend {
+    /**
+     * Use core reflection ({@link java.lang.reflect.Constructor#newInstance(Object...)} and
+     * friends).
+     */
+    REFLECTION,
+    /**
+     * Use method handles from {@link java.lang.invoke}.  Members that cannot be unreflected
+     * into method handles are invoked with reflection instead.
+     */
+    METHOD_HANDLES
+}
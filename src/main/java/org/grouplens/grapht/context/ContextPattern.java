@@ -18,7 +18,6 @@
  */
 package org.grouplens.grapht.context;
 
-import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.grapht.reflect.InjectionPoint;
@@ -28,8 +27,11 @@ import org.grouplens.grapht.util.AbstractChain;
 
 import javax.annotation.Nullable;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A regular pattern matching contexts.
@@ -41,6 +43,7 @@ public class ContextPattern implements ContextMatcher, Serializable {
     private static final long serialVersionUID = 1L;
 
     private final List<Element> tokenChain;
+    private transient volatile Compiled compiled;
 
     private ContextPattern() {
         tokenChain = Collections.emptyList();
@@ -98,6 +101,14 @@ public class ContextPattern implements ContextMatcher, Serializable {
         return pat;
     }
 
+    /**
+     * Get the elements of this pattern.
+     * @return The pattern's elements, in order.
+     */
+    public List<Element> getElements() {
+        return tokenChain;
+    }
+
     /**
      * Append an element to this pattern.  The pattern is not modified; rather, a new pattern
      * extended with the new matching element is returned.
@@ -163,7 +174,8 @@ public class ContextPattern implements ContextMatcher, Serializable {
 
     @Override
     public ContextMatch matches(InjectionContext context) {
-        List<MatchElement> result = recursiveMatch(tokenChain, ImmutableList.copyOf(context));
+        Compiled c = getCompiled();
+        List<MatchElement> result = c.automaton.accept(context.getAccumulatedState(c));
         if (result == null) {
             return null;
         } else {
@@ -171,65 +183,14 @@ public class ContextPattern implements ContextMatcher, Serializable {
         }
     }
 
-    /**
-     * Recursive matching routine.  Matches the pattern via backtracking.  Returns the matched
-     * elements.
-     *
-     * @param pattern The pattern.
-     * @param context The context.
-     * @return The chain of match elements (in reverse order).
-     */
-    private List<MatchElement> recursiveMatch(List<Element> pattern, List<Pair<Satisfaction, InjectionPoint>> context) {
-        if (pattern.isEmpty()) {
-            if (context.isEmpty()) {
-                return Collections.emptyList();
-            } else {
-                return null;
-            }
-        }
-
-        Element element = listHead(pattern);
-
-        // matching against the empty string with a nonempty pattern
-        if (context.isEmpty()) {
-            if (element.getMultiplicity().isOptional()) {
-                return recursiveMatch(pattern.subList(1, pattern.size()), context);
-            } else {
-                return null;
-            }
-        }
-        // non-empty pattern, non-empty context, go
-        Pair<Satisfaction,InjectionPoint> ctxElem = listHead(context);
-        MatchElement match = element.getMatcher().apply(ctxElem);
-        if (match == null) {
-            // no match, what do we do?
-            if (element.getMultiplicity().isOptional()) {
-                // skip this element, keep going
-                return recursiveMatch(listTail(pattern), context);
-            } else {
-                // oops, we must match
-                return null;
-            }
-        } else {
-            // we have a match, try recursion
-            List<Element> nextPat = pattern;
-            if (element.getMultiplicity().isConsumed()) {
-                nextPat = listTail(nextPat);
-            }
-            List<MatchElement> result = recursiveMatch(nextPat, listTail(context));
-            if (result == null && element.getMultiplicity().isOptional()) {
-                // recursive match failed, but element is optional. Try again without it.
-                return recursiveMatch(listTail(pattern), context);
-            }
-            if (result != null) {
-                return ImmutableList.<MatchElement>builder()
-                                    .add(match)
-                                    .addAll(result)
-                                    .build();
-            } else {
-                return result;
-            }
+    private Compiled getCompiled() {
+        Compiled c = compiled;
+        if (c == null) {
+            // benign race: contexts just remember states for each compilation
+            c = new Compiled(tokenChain);
+            compiled = c;
         }
+        return c;
     }
 
     @Override
@@ -318,13 +279,201 @@ public class ContextPattern implements ContextMatcher, Serializable {
         }
     }
 
-    private static <E> E listHead(List<E> lst) {
-        Preconditions.checkArgument(!lst.isEmpty(), "list cannot be empty");
-        return lst.get(0);
+    /**
+     * A pattern compiled for matching, with its own matcher table.  It is the accumulator for
+     * the pattern's match states on injection contexts.
+     */
+    private static final class Compiled implements InjectionContext.Accumulator<Automaton.State> {
+        private final Automaton automaton;
+        private final ContextElementMatcher[] matchers;
+
+        public Compiled(List<Element> tokens) {
+            Map<ContextElementMatcher, Integer> table = new LinkedHashMap<ContextElementMatcher, Integer>();
+            automaton = new Automaton(tokens, table);
+            matchers = table.keySet().toArray(new ContextElementMatcher[table.size()]);
+        }
+
+        @Override
+        public Automaton.State initialState() {
+            return automaton.initialState();
+        }
+
+        @Override
+        public Automaton.State extend(Automaton.State state, Pair<Satisfaction, InjectionPoint> element) {
+            return automaton.advance(state, Automaton.applyMatchers(matchers, element));
+        }
     }
 
-    private static <E> List<E> listTail(List<E> lst) {
-        Preconditions.checkArgument(!lst.isEmpty(), "list cannot be empty");
-        return lst.subList(1, lst.size());
+    /**
+     * A pattern compiled for matching.  The automaton consumes a context one element at a time,
+     * keeping the set of pattern positions the context so far can have reached; each position is
+     * kept with the match elements of the path that reaches it with the highest priority, where
+     * the priorities are those of the backtracking matcher: matching an element with a {@code *}
+     * multiplicity is preferred to skipping it, so earlier elements consume as much of the context
+     * as they can.  Each step takes time proportional to the pattern length, independent of the
+     * length of the context consumed so far.
+     * <p>
+     * The automaton refers to its element matchers by index into a table of matchers, so that
+     * several automata can share the results of applying each matcher to the context (see
+     * {@link MultiPatternMatcher}).
+     */
+    static final class Automaton {
+        private final int[] matchers;
+        private final boolean[] optional;
+        private final boolean[] consumed;
+        /**
+         * Whether the pattern from each position matches the empty context.
+         */
+        private final boolean[] optionalTail;
+
+        /**
+         * Compile a pattern.
+         * @param tokens The pattern's elements.
+         * @param matcherTable The table of matchers.  Matchers used by the pattern that are not
+         *                     yet in the table are added to it.
+         */
+        public Automaton(List<Element> tokens, Map<ContextElementMatcher, Integer> matcherTable) {
+            int n = tokens.size();
+            matchers = new int[n];
+            optional = new boolean[n];
+            consumed = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                Element elem = tokens.get(i);
+                Integer idx = matcherTable.get(elem.getMatcher());
+                if (idx == null) {
+                    idx = matcherTable.size();
+                    matcherTable.put(elem.getMatcher(), idx);
+                }
+                matchers[i] = idx;
+                optional[i] = elem.getMultiplicity().isOptional();
+                consumed[i] = elem.getMultiplicity().isConsumed();
+            }
+            optionalTail = new boolean[n + 1];
+            optionalTail[n] = true;
+            for (int i = n - 1; i >= 0; i--) {
+                optionalTail[i] = optional[i] && optionalTail[i+1];
+            }
+        }
+
+        /**
+         * Apply a table of matchers to a context element.
+         * @param matcherTable The matchers, in table order.
+         * @param element The context element.
+         * @return The results of applying each matcher, in table order.
+         */
+        public static MatchElement[] applyMatchers(ContextElementMatcher[] matcherTable,
+                                                   Pair<Satisfaction, InjectionPoint> element) {
+            MatchElement[] results = new MatchElement[matcherTable.length];
+            for (int k = 0; k < results.length; k++) {
+                results[k] = matcherTable[k].apply(element);
+            }
+            return results;
+        }
+
+        /**
+         * Get the state for the empty context.
+         * @return The initial state.
+         */
+        public State initialState() {
+            return new State(new int[]{0}, new Path[]{null});
+        }
+
+        /**
+         * Advance the automaton over one context element.
+         * @param state The current state.
+         * @param results The results of applying the matcher table to the element.
+         * @return The new state.
+         */
+        public State advance(State state, MatchElement[] results) {
+            final int np = matchers.length;
+            if (state.positions.length == 0) {
+                return state;
+            }
+            boolean[] expanded = new boolean[np + 1];
+            boolean[] reached = new boolean[np + 1];
+            int[] positions = new int[np + 1];
+            Path[] paths = new Path[np + 1];
+            int n = 0;
+            // threads in priority order; each is expanded by matching the element at its
+            // position, then by skipping that element if it is optional
+            for (int t = 0; t < state.positions.length; t++) {
+                Path path = state.paths[t];
+                for (int i = state.positions[t]; i < np && !expanded[i]; i++) {
+                    // a higher-priority thread that expanded i has already produced everything
+                    // this one can from here on
+                    expanded[i] = true;
+                    MatchElement m = results[matchers[i]];
+                    if (m != null) {
+                        int next = consumed[i] ? i + 1 : i;
+                        if (!reached[next]) {
+                            reached[next] = true;
+                            positions[n] = next;
+                            paths[n] = new Path(m, path);
+                            n++;
+                        }
+                    }
+                    if (!optional[i]) {
+                        break;
+                    }
+                }
+            }
+            return new State(Arrays.copyOf(positions, n), Arrays.copyOf(paths, n));
+        }
+
+        /**
+         * Get the match for a state.
+         * @param state The state after consuming a context.
+         * @return The match elements for the context (in context order), or {@code null} if the
+         *         context does not match.
+         */
+        @Nullable
+        public List<MatchElement> accept(State state) {
+            for (int t = 0; t < state.positions.length; t++) {
+                if (optionalTail[state.positions[t]]) {
+                    return state.paths[t] == null ? Collections.<MatchElement>emptyList() : state.paths[t].toList();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * An automaton state: the reachable positions, in priority order, with their paths.
+         */
+        static final class State {
+            private final int[] positions;
+            private final Path[] paths;
+
+            State(int[] positions, Path[] paths) {
+                this.positions = positions;
+                this.paths = paths;
+            }
+        }
+
+        /**
+         * The match elements of a path, as a reverse linked list shared between states.
+         */
+        private static final class Path {
+            private final MatchElement element;
+            @Nullable
+            private final Path previous;
+            private final int length;
+
+            Path(MatchElement elt, @Nullable Path prev) {
+                element = elt;
+                previous = prev;
+                length = prev == null ? 1 : prev.length + 1;
+            }
+
+            List<MatchElement> toList() {
+                MatchElement[] elems = new MatchElement[length];
+                Path p = this;
+                for (int i = length - 1; i >= 0; i--) {
+                    elems[i] = p.element;
+                    p = p.previous;
+                }
+                return Arrays.asList(elems);
+            }
+        }
     }
+
 }
@@ -0,0 +1,115 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.context;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.solver.InjectionContext;
+
+import java.util.*;
+
+/**
+ * Matches a set of context patterns against a context together.  Each distinct element matcher
+ * used by the patterns is applied to each element of the context once, and the results are
+ * shared by all the patterns.  Since rule sets tend to use a small number of element matchers
+ * (the wildcard and the types named in their scopes) across many patterns, this is much cheaper
+ * than matching each pattern separately.
+ * <p>
+ * The patterns' match states are accumulated on the injection context (see
+ * {@link InjectionContext#getAccumulatedState(InjectionContext.Accumulator)}), so matching a
+ * context that extends an already-matched context only processes the new element.
+ *
+ * @since 0.9
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public final class MultiPatternMatcher {
+    private final List<ContextPattern> patterns;
+    private final List<ContextPattern.Automaton> automata;
+    private final ContextElementMatcher[] matcherTable;
+    private final StateAccumulator accumulator = new StateAccumulator();
+
+    /**
+     * Create a matcher for a set of patterns.
+     * @param patterns The patterns to match.
+     */
+    public MultiPatternMatcher(Collection<ContextPattern> patterns) {
+        this.patterns = ImmutableList.copyOf(patterns);
+        Map<ContextElementMatcher, Integer> table = new LinkedHashMap<ContextElementMatcher, Integer>();
+        ImmutableList.Builder<ContextPattern.Automaton> bld = ImmutableList.builder();
+        for (ContextPattern pat: this.patterns) {
+            bld.add(new ContextPattern.Automaton(pat.getElements(), table));
+        }
+        automata = bld.build();
+        matcherTable = table.keySet().toArray(new ContextElementMatcher[table.size()]);
+    }
+
+    /**
+     * Get the patterns matched by this matcher.
+     * @return The patterns, in the order they were provided.
+     */
+    public List<ContextPattern> getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Match all patterns against a context.
+     *
+     * @param context The context.
+     * @return A map from each pattern that matches the context to its match, in pattern order.
+     *         Each match is the same as that returned by {@link ContextPattern#matches(InjectionContext)}.
+     */
+    public Map<ContextPattern, ContextMatch> matches(InjectionContext context) {
+        ContextPattern.Automaton.State[] states = context.getAccumulatedState(accumulator);
+        Map<ContextPattern, ContextMatch> result = new LinkedHashMap<ContextPattern, ContextMatch>();
+        for (int i = 0; i < automata.size(); i++) {
+            List<MatchElement> match = automata.get(i).accept(states[i]);
+            if (match != null) {
+                result.put(patterns.get(i), ContextMatch.create(match));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Accumulates the states of all the automata, applying the matcher table once per element.
+     */
+    private class StateAccumulator implements InjectionContext.Accumulator<ContextPattern.Automaton.State[]> {
+        @Override
+        public ContextPattern.Automaton.State[] initialState() {
+            ContextPattern.Automaton.State[] states = new ContextPattern.Automaton.State[automata.size()];
+            for (int i = 0; i < states.length; i++) {
+                states[i] = automata.get(i).initialState();
+            }
+            return states;
+        }
+
+        @Override
+        public ContextPattern.Automaton.State[] extend(ContextPattern.Automaton.State[] states,
+                                                       Pair<Satisfaction, InjectionPoint> element) {
+            MatchElement[] results = ContextPattern.Automaton.applyMatchers(matcherTable, element);
+            ContextPattern.Automaton.State[] next = new ContextPattern.Automaton.State[states.length];
+            for (int i = 0; i < states.length; i++) {
+                next[i] = automata.get(i).advance(states[i], results);
+            }
+            return next;
+        }
+    }
+}
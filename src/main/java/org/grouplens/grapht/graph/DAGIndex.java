@@ -0,0 +1,266 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.graph;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Index of an immutable DAG, shared by all the nodes of the graph.  Nodes are numbered in
+ * topological order (tails before heads), and adjacency and incoming edges are stored in compact
+ * int-indexed arrays.  Every node reachable from the root of the index can answer its traversal
+ * queries with a {@link View} on the shared arrays, rather than each node keeping its own copies
+ * of the sets, lists and edge maps for its subgraph.
+ *
+ * @param <V> The type of node labels.
+ * @param <E> The type of edge labels.
+ * @since 0.9
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+final class DAGIndex<V,E> {
+    private final ImmutableList<DAGNode<V,E>> nodes;
+    private final Map<DAGNode<V,E>,Integer> positions;
+    // successors of node i are successors[successorOffsets[i]] until successorOffsets[i+1]
+    private final int[] successorOffsets;
+    private final int[] successors;
+    // incoming edges of node i are incomingEdges[incomingOffsets[i]] until incomingOffsets[i+1]
+    private final int[] incomingOffsets;
+    private final ImmutableList<DAGEdge<V,E>> incomingEdges;
+    private final int[] incomingHeads;
+    // views are shared, so nodes adopting this index can hold them weakly
+    private final AtomicReferenceArray<View<V,E>> views;
+
+    /**
+     * Build an index.
+     * @param sorted The nodes of the graph, in topological order.
+     */
+    DAGIndex(Collection<DAGNode<V,E>> sorted) {
+        nodes = ImmutableList.copyOf(sorted);
+        int n = nodes.size();
+        positions = Maps.newHashMapWithExpectedSize(n);
+        for (int i = 0; i < n; i++) {
+            positions.put(nodes.get(i), i);
+        }
+
+        successorOffsets = new int[n + 1];
+        incomingOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            Set<DAGEdge<V,E>> out = nodes.get(i).getOutgoingEdges();
+            successorOffsets[i + 1] = successorOffsets[i] + out.size();
+            for (DAGEdge<V,E> edge: out) {
+                incomingOffsets[positions.get(edge.getTail()) + 1] += 1;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            incomingOffsets[i + 1] += incomingOffsets[i];
+        }
+
+        int nedges = successorOffsets[n];
+        successors = new int[nedges];
+        incomingHeads = new int[nedges];
+        Object[] incoming = new Object[nedges];
+        int[] fill = Arrays.copyOf(incomingOffsets, n);
+        for (int i = 0; i < n; i++) {
+            int j = successorOffsets[i];
+            for (DAGEdge<V,E> edge: nodes.get(i).getOutgoingEdges()) {
+                int tail = positions.get(edge.getTail());
+                successors[j++] = tail;
+                int k = fill[tail]++;
+                incoming[k] = edge;
+                incomingHeads[k] = i;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        List<DAGEdge<V,E>> edges = (List) Arrays.asList(incoming);
+        incomingEdges = ImmutableList.copyOf(edges);
+        views = new AtomicReferenceArray<View<V, E>>(n);
+    }
+
+    /**
+     * Get the nodes of the indexed graph.
+     * @return The nodes, in topological order.
+     */
+    List<DAGNode<V,E>> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Get the view of this index for one of its nodes.  Each node has one view, which lives as
+     * long as the index does.
+     *
+     * @param node The node.
+     * @return A view answering traversal queries for the subgraph rooted at {@code node}.
+     */
+    View<V,E> viewFor(DAGNode<V,E> node) {
+        Integer pos = positions.get(node);
+        if (pos == null) {
+            throw new IllegalArgumentException("node not in graph");
+        }
+        View<V,E> view = views.get(pos);
+        if (view == null) {
+            views.compareAndSet(pos, null, new View<V, E>(this, pos));
+            view = views.get(pos);
+        }
+        return view;
+    }
+
+    /**
+     * Compute the positions reachable from a node.  Since nodes are numbered in topological
+     * order, one downward sweep suffices.
+     */
+    private BitSet computeReachable(int root) {
+        BitSet bits = new BitSet(root + 1);
+        bits.set(root);
+        for (int i = root; i >= 0; i = bits.previousSetBit(i - 1)) {
+            for (int j = successorOffsets[i]; j < successorOffsets[i + 1]; j++) {
+                bits.set(successors[j]);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * The subgraph reachable from one node of an index.  The reachable positions are computed
+     * lazily and stored as a bit set and a sorted position array, so the view costs a few bits
+     * per node of the shared graph.
+     */
+    @Immutable
+    static final class View<V,E> {
+        private final DAGIndex<V,E> index;
+        private final int root;
+        private final Supplier<Reach> reach;
+
+        private View(DAGIndex<V,E> idx, int pos) {
+            index = idx;
+            root = pos;
+            reach = Suppliers.memoize(new Supplier<Reach>() {
+                @Override
+                public Reach get() {
+                    return new Reach(index.computeReachable(root));
+                }
+            });
+        }
+
+        /**
+         * Get the nodes reachable from the root, in topological order.
+         * @return The sorted list of nodes.
+         */
+        @Nonnull
+        List<DAGNode<V,E>> getSortedNodes() {
+            if (root == index.nodes.size() - 1) {
+                return index.nodes;
+            }
+            final int[] members = reach.get().members;
+            return new AbstractList<DAGNode<V, E>>() {
+                @Override
+                public DAGNode<V, E> get(int i) {
+                    return index.nodes.get(members[i]);
+                }
+
+                @Override
+                public int size() {
+                    return members.length;
+                }
+            };
+        }
+
+        /**
+         * Get the set of nodes reachable from the root.
+         * @return The reachable node set.
+         */
+        @Nonnull
+        Set<DAGNode<V,E>> getReachableNodes() {
+            final List<DAGNode<V,E>> sorted = getSortedNodes();
+            return new AbstractSet<DAGNode<V, E>>() {
+                @Override
+                public boolean contains(Object o) {
+                    return isReachable(o);
+                }
+
+                @Override
+                public Iterator<DAGNode<V, E>> iterator() {
+                    return Collections.unmodifiableList(sorted).iterator();
+                }
+
+                @Override
+                public int size() {
+                    return sorted.size();
+                }
+            };
+        }
+
+        /**
+         * Query whether an object is a node reachable from the root.
+         */
+        private boolean isReachable(Object o) {
+            Integer pos = index.positions.get(o);
+            return pos != null && pos <= root && reach.get().bits.get(pos);
+        }
+
+        /**
+         * Get the incoming edges of a node that come from nodes reachable from the root.
+         * @param node The node.
+         * @return The incoming edges, or the empty set if the node is not reachable.
+         */
+        @Nonnull
+        Set<DAGEdge<V,E>> getIncomingEdges(DAGNode<V,E> node) {
+            Integer pos = index.positions.get(node);
+            if (pos == null || pos > root) {
+                return ImmutableSet.of();
+            }
+            BitSet bits = reach.get().bits;
+            if (!bits.get(pos)) {
+                return ImmutableSet.of();
+            }
+            ImmutableSet.Builder<DAGEdge<V,E>> bld = ImmutableSet.builder();
+            for (int k = index.incomingOffsets[pos]; k < index.incomingOffsets[pos + 1]; k++) {
+                if (bits.get(index.incomingHeads[k])) {
+                    bld.add(index.incomingEdges.get(k));
+                }
+            }
+            return bld.build();
+        }
+    }
+
+    /**
+     * The positions reachable from a view's root.
+     */
+    private static final class Reach {
+        private final BitSet bits;
+        private final int[] members;
+
+        Reach(BitSet bs) {
+            bits = bs;
+            members = new int[bs.cardinality()];
+            int j = 0;
+            for (int i = bs.nextSetBit(0); i >= 0; i = bs.nextSetBit(i + 1)) {
+                members[j++] = i;
+            }
+        }
+    }
+}
@@ -25,9 +25,8 @@ import org.apache.commons.lang3.tuple.Pair;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
 import java.util.*;
 
 /**
@@ -39,6 +38,15 @@ import java.util.*;
  * node to another, so long as those edges have distinct labels.
  *
  * <p>Nodes know about all nodes reachable from them, and the edges connecting those nodes.
+ * These traversal queries are answered from an index of the graph that is shared with the nodes
+ * below: when a node first builds its index, each reachable node that does not have one yet
+ * adopts it.  Adopted indexes are only weakly held, so a subgraph does not keep the larger
+ * graphs it was once queried through alive.
+ *
+ * <p>Nodes are serialized in {@linkplain FrozenGraph frozen} form, so the serialized graph has no
+ * per-edge objects and deep graphs do not exhaust the stack.  Nodes are shared within each
+ * serialized graph, but separately serialized graphs (for example, a graph and one of its own
+ * subgraphs) do not share nodes when they are read back.
  *
  * <p>DAGs and their nodes are immutable.  You can build them using a {@linkplain DAGNodeBuilder builder},
  * obtained from {@link #newBuilder(Object)}.
@@ -57,9 +65,9 @@ public class DAGNode<V,E> implements Serializable {
     @Nonnull
     private final ImmutableSet<DAGEdge<V,E>> outgoingEdges;
 
-    private transient Supplier<SetMultimap<DAGNode<V,E>,DAGEdge<V,E>>> reverseEdgeCache;
-    private transient Supplier<Set<DAGNode<V,E>>> reachableNodeCache;
-    private transient Supplier<List<DAGNode<V,E>>> topologicalSortCache;
+    // the view of an index built from this node, and the view of an index adopted from above
+    private transient volatile DAGIndex.View<V,E> indexView;
+    private transient volatile WeakReference<DAGIndex.View<V,E>> sharedView;
 
     /**
      * Create a new DAG node with no outgoing edges.
@@ -123,29 +131,39 @@ public class DAGNode<V,E> implements Serializable {
             bld.add(edge);
         }
         outgoingEdges = bld.build();
-        initializeCaches();
     }
 
     /**
-     * Initialize caches for traversing this node.
+     * Get this node's view of the graph index, building the index if necessary.  A newly-built
+     * index is offered to every node it contains, so later queries on those nodes reuse it for as
+     * long as the index is reachable from its root.
+     *
+     * @return The index view for the subgraph rooted at this node.
      */
-    private void initializeCaches() {
-        reverseEdgeCache = Suppliers.memoize(new EdgeMapSupplier());
-        reachableNodeCache = Suppliers.memoize(new NodeSetSupplier());
-        topologicalSortCache = Suppliers.memoize(new TopologicalSortSupplier());
+    private DAGIndex.View<V,E> getIndexView() {
+        DAGIndex.View<V,E> view = indexView;
+        if (view == null) {
+            view = getSharedView();
+        }
+        if (view == null) {
+            LinkedHashSet<DAGNode<V,E>> visited = Sets.newLinkedHashSet();
+            sortVisit(visited);
+            DAGIndex<V,E> index = new DAGIndex<V, E>(visited);
+            view = index.viewFor(this);
+            indexView = view;
+            for (DAGNode<V,E> node: index.getNodes()) {
+                if (node.indexView == null && node.getSharedView() == null) {
+                    node.sharedView = new WeakReference<DAGIndex.View<V, E>>(index.viewFor(node));
+                }
+            }
+        }
+        return view;
     }
 
-    /**
-     * Override the object reading protocol to make sure caches are instantiated.  This just calls
-     * {@link #initializeCaches()} after doing the default object-reading.
-     *
-     * @param stream The stream to read from.
-     * @throws IOException If an I/O exception occurs deserializing the object.
-     * @throws ClassNotFoundException If there is a missing class deserializing the object.
-     */
-    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
-        stream.defaultReadObject();
-        initializeCaches();
+    @Nullable
+    private DAGIndex.View<V,E> getSharedView() {
+        WeakReference<DAGIndex.View<V,E>> ref = sharedView;
+        return ref == null ? null : ref.get();
     }
 
     /**
@@ -216,19 +234,12 @@ public class DAGNode<V,E> implements Serializable {
     }
 
     /**
-     * Get a multimap of incoming edges.  For each node reachable from this node, the map will
-     * contain each of its incoming edges (also reachable from this graph).
-     *
-     * @return The reverse edge map.
+     * Get the nodes reachable from this node, including the node itself.
+     * @return The set of reachable nodes.
      */
-    @Nonnull
-    private SetMultimap<DAGNode<V,E>,DAGEdge<V,E>> getIncomingEdgeMap() {
-        return reverseEdgeCache.get();
-    }
-
     @Nonnull
     public Set<DAGNode<V,E>> getReachableNodes() {
-        return reachableNodeCache.get();
+        return getIndexView().getReachableNodes();
     }
 
     /**
@@ -242,24 +253,40 @@ public class DAGNode<V,E> implements Serializable {
      */
     @Nonnull
     public List<DAGNode<V,E>> getSortedNodes() {
-        return topologicalSortCache.get();
+        return getIndexView().getSortedNodes();
     }
 
     /**
-     * Helper mode for {@link #getSortedNodes()}, via {@link TopologicalSortSupplier}.  This method
+     * Helper mode for {@link #getSortedNodes()}, via {@link #getIndexView()}.  This method
      * does a depth-first traversal of the nodes, adding each to the {@code visited} set when it is
-     * left.  This results in {@code visited} being a topological sort.
+     * left.  This results in {@code visited} being a topological sort.  The traversal uses an
+     * explicit stack, so deep graphs do not overflow the call stack.
      *
      * @param visited The set of nodes seen so far.
      */
     private void sortVisit(LinkedHashSet<DAGNode<V,E>> visited) {
-        if (!visited.contains(this)) {
-            for (DAGEdge<V,E> nbr: outgoingEdges) {
-                nbr.getTail().sortVisit(visited);
+        if (visited.contains(this)) {
+            return;
+        }
+        Deque<DAGNode<V,E>> nodes = new ArrayDeque<DAGNode<V, E>>();
+        Deque<Iterator<DAGEdge<V,E>>> edges = new ArrayDeque<Iterator<DAGEdge<V, E>>>();
+        nodes.push(this);
+        edges.push(outgoingEdges.iterator());
+        while (!nodes.isEmpty()) {
+            Iterator<DAGEdge<V,E>> iter = edges.peek();
+            if (iter.hasNext()) {
+                DAGNode<V,E> nbr = iter.next().getTail();
+                if (!visited.contains(nbr)) {
+                    nodes.push(nbr);
+                    edges.push(nbr.outgoingEdges.iterator());
+                }
+            } else {
+                DAGNode<V,E> node = nodes.pop();
+                edges.pop();
+                // neighbors won't have added this, or we have an impossible cycle
+                assert !visited.contains(node);
+                visited.add(node);
             }
-            // neighbors won't have added this, or we have an impossible cycle
-            assert !visited.contains(this);
-            visited.add(this);
         }
     }
 
@@ -269,7 +296,7 @@ public class DAGNode<V,E> implements Serializable {
      */
     @Nonnull
     public Set<DAGEdge<V,E>> getIncomingEdges(DAGNode<V,E> node) {
-        return getIncomingEdgeMap().get(node);
+        return getIndexView().getIncomingEdges(node);
     }
 
     /**
@@ -282,7 +309,7 @@ public class DAGNode<V,E> implements Serializable {
      *               that has to be replaced with the node that replaces it.  This map should
      *               usually be empty on the initial call to this method.  In particular, it should
      *               not contain any reachable nodes on the initial call, or unexpected behavior
-     *               may arise.  Recursive calls of this method to itself do contain such nodes.
+     *               may arise.
      * @return The graph with the replaced node.
      */
     public DAGNode<V,E> replaceNode(DAGNode<V,E> node, DAGNode<V,E> replacement,
@@ -293,18 +320,39 @@ public class DAGNode<V,E> implements Serializable {
         } else if (memory.containsKey(this)) {
             // we have already been replaced, reuse the replacement
             return memory.get(this);
-        } else if (getReachableNodes().contains(node)) {
-            DAGNodeBuilder<V,E> bld = newBuilder(label);
-            for (DAGEdge<V,E> edge: outgoingEdges) {
-                DAGNode<V,E> newTail = edge.getTail().replaceNode(node, replacement, memory);
-                bld.addEdge(newTail, edge.getLabel());
-            }
-            DAGNode<V,E> repl = bld.build();
-            memory.put(this, repl);
-            return repl;
-        } else {
+        } else if (!getReachableNodes().contains(node)) {
             return this;
         }
+
+        // rebuild the nodes from which the node is reachable, each once, in topological order
+        // so that each node's neighbors are replaced before it is rebuilt
+        Set<DAGNode<V,E>> reaching = Sets.newHashSet();
+        for (DAGNode<V,E> n: getSortedNodes()) {
+            if (n.equals(node)) {
+                memory.put(node, replacement);
+                reaching.add(n);
+                continue;
+            }
+            boolean reaches = false;
+            for (DAGEdge<V,E> edge: n.outgoingEdges) {
+                if (reaching.contains(edge.getTail())) {
+                    reaches = true;
+                    break;
+                }
+            }
+            if (reaches) {
+                reaching.add(n);
+                if (!memory.containsKey(n)) {
+                    DAGNodeBuilder<V,E> bld = newBuilder(n.label);
+                    for (DAGEdge<V,E> edge: n.outgoingEdges) {
+                        DAGNode<V,E> newTail = memory.get(edge.getTail());
+                        bld.addEdge(newTail == null ? edge.getTail() : newTail, edge.getLabel());
+                    }
+                    memory.put(n, bld.build());
+                }
+            }
+        }
+        return memory.get(this);
     }
 
     /**
@@ -384,15 +432,37 @@ public class DAGNode<V,E> implements Serializable {
      * @return The rewritten graph.
      */
     public DAGNode<V,E> transformEdges(Function<? super DAGEdge<V,E>, ? extends DAGEdge<V,E>> function) {
+        // transform each node once, in topological order so that tails are transformed first
+        Map<DAGNode<V,E>,DAGNode<V,E>> transformed = Maps.newHashMap();
+        for (DAGNode<V,E> node: getSortedNodes()) {
+            DAGNode<V,E> result = node.transformOwnEdges(function, transformed);
+            if (result != node) {
+                transformed.put(node, result);
+            }
+        }
+        DAGNode<V,E> result = transformed.get(this);
+        return result == null ? this : result;
+    }
+
+    /**
+     * Transform the outgoing edges of this node, given the transformed versions of the nodes it
+     * reaches.
+     *
+     * @param function The edge transformation function.
+     * @param transformed The transformed nodes; nodes not in the map are unmodified.
+     * @return The transformed node, or this node if it is unmodified.
+     */
+    private DAGNode<V,E> transformOwnEdges(Function<? super DAGEdge<V,E>, ? extends DAGEdge<V,E>> function,
+                                           Map<DAGNode<V,E>,DAGNode<V,E>> transformed) {
         // builder for new node
         DAGNodeBuilder<V,E> builder = null;
         // intact edges (unmodified edges)
         List<DAGEdge<V,E>> intact = Lists.newArrayListWithCapacity(outgoingEdges.size());
         for (DAGEdge<V,E> edge: outgoingEdges) {
             DAGNode<V,E> tail = edge.getTail();
-            DAGNode<V,E> transformedTail = tail.transformEdges(function);
+            DAGNode<V,E> transformedTail = transformed.get(tail);
             DAGEdge<V,E> toQuery = edge;
-            if (transformedTail != tail) {
+            if (transformedTail != null) {
                 // the node changed, query with the updated edge
                 toQuery = DAGEdge.create(this, transformedTail, edge.getLabel());
             }
@@ -450,36 +520,27 @@ public class DAGNode<V,E> implements Serializable {
     }
 
     /**
-     * Supplier to compute the map of incoming edges.  Used to implement {@link #getIncomingEdgeMap()}.
+     * Replace this node with its frozen form for serialization.
      */
-    private class EdgeMapSupplier implements Supplier<SetMultimap<DAGNode<V, E>, DAGEdge<V, E>>> {
-        @Override
-        public SetMultimap<DAGNode<V, E>, DAGEdge<V, E>> get() {
-            ImmutableSetMultimap.Builder<DAGNode<V,E>,DAGEdge<V,E>> bld = ImmutableSetMultimap.builder();
-            for (DAGEdge<V,E> nbr: outgoingEdges) {
-                bld.put(nbr.getTail(), nbr);
-                bld.putAll(nbr.getTail().getIncomingEdgeMap());
-            }
-            return bld.build();
-        }
+    private Object writeReplace() {
+        return new SerialForm<V,E>(FrozenGraph.freeze(this));
     }
 
     /**
-     * Supplier to compute the set of reachable nodes.
+     * The serialized form of a graph.  Graphs serialized before the frozen form was introduced
+     * are still read field by field.
      */
-    private class NodeSetSupplier implements Supplier<Set<DAGNode<V, E>>> {
-        @Override
-        public ImmutableSet<DAGNode<V, E>> get() {
-            return ImmutableSet.copyOf(getSortedNodes());
+    private static class SerialForm<V,E> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final FrozenGraph<V,E> graph;
+
+        public SerialForm(FrozenGraph<V,E> graph) {
+            this.graph = graph;
         }
-    }
 
-    private class TopologicalSortSupplier implements Supplier<List<DAGNode<V,E>>> {
-        @Override
-        public List<DAGNode<V, E>> get() {
-            LinkedHashSet<DAGNode<V,E>> visited = Sets.newLinkedHashSet();
-            sortVisit(visited);
-            return ImmutableList.copyOf(visited);
+        private Object readResolve() {
+            return graph.thaw();
         }
     }
 }
@@ -23,11 +23,13 @@ import com.google.common.collect.Sets;
 import org.apache.commons.lang3.tuple.Pair;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Set;
 
 /**
  * A builder for {@linkplain DAGNode DAG nodes}.  You can create one with {@link DAGNode#newBuilder()}
- * or {@link DAGNode#newBuilder(Object)}.
+ * or {@link DAGNode#newBuilder(Object)}.  Builders obtained from a {@link NodeInterner} build
+ * interned nodes.
  *
  * @since 0.7.0
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
@@ -35,14 +37,21 @@ import java.util.Set;
 public class DAGNodeBuilder<V,E> {
     private V label;
     private Set<Pair<DAGNode<V,E>,E>> edges;
+    @Nullable
+    private final NodeInterner<V,E> interner;
 
     public DAGNodeBuilder() {
         this(null);
     }
 
     public DAGNodeBuilder(V lbl) {
+        this(lbl, null);
+    }
+
+    DAGNodeBuilder(V lbl, @Nullable NodeInterner<V,E> interner) {
         label = lbl;
         edges = Sets.newHashSet();
+        this.interner = interner;
     }
 
     /**
@@ -88,7 +97,11 @@ public class DAGNodeBuilder<V,E> {
     @Nonnull
     public DAGNode<V,E> build() {
         Preconditions.checkState(label != null, "no node label set");
-        return new DAGNode<V,E>(label, edges);
+        if (interner != null) {
+            return interner.intern(label, edges);
+        } else {
+            return new DAGNode<V,E>(label, edges);
+        }
     }
 
     @Override
@@ -0,0 +1,220 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.graph;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, read-only form of a DAG.  Nodes are numbered in topological order, so every edge
+ * goes from a higher-numbered node to a lower-numbered one and the root is the last node.  The
+ * outgoing edges of all nodes are stored in one run of int arrays (compressed sparse row form),
+ * with node and edge labels in parallel arrays; there are no per-node or per-edge objects.
+ *
+ * <p>Edges are identified by their index in the edge arrays.  The outgoing edges of node
+ * {@code n} are the edges from {@link #getFirstEdge(int) getFirstEdge(n)} (inclusive) to
+ * {@link #getFirstEdge(int) getFirstEdge(n+1)} (exclusive).
+ *
+ * <p>Frozen graphs are meant for graphs that are done growing, such as a fully resolved
+ * dependency graph that only needs to be navigated or stored.  Use {@link #thaw()} to get a
+ * {@link DAGNode} graph back.
+ *
+ * @param <V> The type of node labels.
+ * @param <E> The type of edge labels.
+ * @since 0.9
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public class FrozenGraph<V,E> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final Object[] nodeLabels;
+    private final int[] edgeOffsets;
+    private final int[] edgeTails;
+    private final Object[] edgeLabels;
+
+    private FrozenGraph(Object[] nodes, int[] offsets, int[] tails, Object[] labels) {
+        nodeLabels = nodes;
+        edgeOffsets = offsets;
+        edgeTails = tails;
+        edgeLabels = labels;
+    }
+
+    /**
+     * Freeze a graph.
+     * @param root The root of the graph.
+     * @param <V> The type of node labels.
+     * @param <E> The type of edge labels.
+     * @return The frozen form of the graph reachable from {@code root}.
+     */
+    public static <V,E> FrozenGraph<V,E> freeze(@Nonnull DAGNode<V,E> root) {
+        Preconditions.checkNotNull(root, "root node");
+        List<DAGNode<V,E>> nodes = root.getSortedNodes();
+        int n = nodes.size();
+        Map<DAGNode<V,E>,Integer> positions = Maps.newHashMapWithExpectedSize(n);
+        Object[] nodeLabels = new Object[n];
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            DAGNode<V,E> node = nodes.get(i);
+            positions.put(node, i);
+            nodeLabels[i] = node.getLabel();
+            offsets[i + 1] = offsets[i] + node.getOutgoingEdges().size();
+        }
+
+        int[] tails = new int[offsets[n]];
+        Object[] labels = new Object[offsets[n]];
+        for (int i = 0; i < n; i++) {
+            int j = offsets[i];
+            for (DAGEdge<V,E> edge: nodes.get(i).getOutgoingEdges()) {
+                tails[j] = positions.get(edge.getTail());
+                labels[j] = edge.getLabel();
+                j++;
+            }
+        }
+        return new FrozenGraph<V, E>(nodeLabels, offsets, tails, labels);
+    }
+
+    /**
+     * Get the number of nodes in the graph.
+     * @return The number of nodes.
+     */
+    public int getNodeCount() {
+        return nodeLabels.length;
+    }
+
+    /**
+     * Get the number of edges in the graph.
+     * @return The number of edges.
+     */
+    public int getEdgeCount() {
+        return edgeTails.length;
+    }
+
+    /**
+     * Get the root node of the graph.
+     * @return The index of the root node (the last node).
+     */
+    public int getRoot() {
+        return nodeLabels.length - 1;
+    }
+
+    /**
+     * Get the label of a node.
+     * @param node The node index.
+     * @return The node's label.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public V getLabel(int node) {
+        return (V) nodeLabels[node];
+    }
+
+    /**
+     * Get the index of the first outgoing edge of a node.
+     * @param node The node index, or the node count to get the end of the last node's edges.
+     * @return The index of the node's first outgoing edge.
+     */
+    public int getFirstEdge(int node) {
+        return edgeOffsets[node];
+    }
+
+    /**
+     * Get the number of outgoing edges of a node.
+     * @param node The node index.
+     * @return The node's out-degree.
+     */
+    public int getOutDegree(int node) {
+        return edgeOffsets[node + 1] - edgeOffsets[node];
+    }
+
+    /**
+     * Get the tail (target) of an edge.
+     * @param edge The edge index.
+     * @return The index of the edge's tail node.
+     */
+    public int getEdgeTail(int edge) {
+        return edgeTails[edge];
+    }
+
+    /**
+     * Get the label of an edge.
+     * @param edge The edge index.
+     * @return The edge's label.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    public E getEdgeLabel(int edge) {
+        return (E) edgeLabels[edge];
+    }
+
+    /**
+     * Search for an outgoing edge of a node by a predicate.
+     *
+     * @param node The node index.
+     * @param predicate A predicate over edge labels.
+     * @return The index of an outgoing edge whose label matches the predicate, or -1 if there is
+     *         no such edge.  If several edges match, the first one is returned.
+     * @see DAGNode#getOutgoingEdgeWithLabel(Predicate)
+     */
+    public int findOutgoingEdge(int node, Predicate<? super E> predicate) {
+        for (int e = edgeOffsets[node]; e < edgeOffsets[node + 1]; e++) {
+            if (predicate.apply(getEdgeLabel(e))) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Rebuild the graph as {@link DAGNode}s.
+     * @return The root of the rebuilt graph.
+     */
+    public DAGNode<V,E> thaw() {
+        int n = nodeLabels.length;
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        DAGNode<V,E>[] nodes = new DAGNode[n];
+        // tails come before heads, so each node's targets are built before it
+        for (int i = 0; i < n; i++) {
+            DAGNodeBuilder<V,E> bld = DAGNode.newBuilder(getLabel(i));
+            for (int e = edgeOffsets[i]; e < edgeOffsets[i + 1]; e++) {
+                bld.addEdge(nodes[edgeTails[e]], getEdgeLabel(e));
+            }
+            nodes[i] = bld.build();
+        }
+        return nodes[n - 1];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("frozen graph with ")
+          .append(getNodeCount())
+          .append(" nodes and ")
+          .append(getEdgeCount())
+          .append(" edges");
+        return sb.toString();
+    }
+}
@@ -34,6 +34,10 @@ import java.util.Set;
  * Merges graphs to remove redundant nodes.  This takes graphs and merges them, pruning redundant
  * nodes within the graphs and between graphs previously merged.  It remembers graphs it has
  * previously seen to allow nodes to be reused across multiple graphs.
+ * <p>
+ * The pool keeps an index of its nodes by label and (merged) neighbor set, which is updated as
+ * graphs are merged, so the cost of a merge depends on the size of the graph being merged rather
+ * than the size of the pool.  Merge pools are not thread-safe.
  *
  * @param <V> The vertex type of graphs to merge.
  * @param <E> The edge type of graphs to merge.
@@ -45,9 +49,16 @@ public class MergePool<V,E> {
     private static final Logger logger = LoggerFactory.getLogger(MergePool.class);
 
     private final Set<DAGNode<V,E>> pool;
+    /**
+     * Index of pooled nodes by label and adjacent nodes.
+     */
+    private final Map<Pair<V,Set<DAGNode<V,E>>>, DAGNode<V,E>> nodeTable;
+    private long hitCount;
+    private long missCount;
 
     private MergePool() {
         pool = Sets.newLinkedHashSet();
+        nodeTable = Maps.newHashMap();
     }
 
     /**
@@ -72,16 +83,15 @@ public class MergePool<V,E> {
      * @return The new simplified, merged graph.
      */
     public DAGNode<V,E> merge(DAGNode<V, E> graph) {
-        List<DAGNode<V, E>> sorted = graph.getSortedNodes();
-
-        Map<Pair<V,Set<DAGNode<V,E>>>, DAGNode<V,E>> nodeTable = Maps.newHashMap();
-        for (DAGNode<V, E> node: pool) {
-            Pair<V, Set<DAGNode<V, E>>> key =
-                    Pair.of(node.getLabel(), node.getAdjacentNodes());
-            assert !nodeTable.containsKey(key);
-            nodeTable.put(key, node);
+        if (pool.contains(graph)) {
+            // the graph has already been merged (possibly because it was built from interned
+            // nodes), so every node in it is a hit
+            hitCount += graph.getReachableNodes().size();
+            return graph;
         }
 
+        List<DAGNode<V, E>> sorted = graph.getSortedNodes();
+
         // We want to map nodes to their previous merged versions
         Map<DAGNode<V,E>, DAGNode<V,E>> mergedMap = Maps.newHashMap();
         // Now start processing nodes
@@ -96,8 +106,10 @@ public class MergePool<V,E> {
                                   .toSet();
 
             // See if we have already created an equivalent to this node
-            DAGNode<V, E> newNode = nodeTable.get(Pair.of(sat, neighbors));
+            Pair<V, Set<DAGNode<V, E>>> key = Pair.of(sat, neighbors);
+            DAGNode<V, E> newNode = nodeTable.get(key);
             if (newNode == null) {
+                missCount++;
                 // No, let's start building one
                 DAGNodeBuilder<V,E> bld = DAGNode.newBuilder();
 
@@ -121,8 +133,11 @@ public class MergePool<V,E> {
                     // no edges were changed, leave the node unmodified
                     newNode = toMerge;
                 }
-                nodeTable.put(Pair.of(sat, neighbors), newNode);
+                // the new node is reachable from the merged root, so it joins the pool
+                nodeTable.put(key, newNode);
+                pool.add(newNode);
             } else {
+                hitCount++;
                 logger.debug("Node already in merged graph for satisfaction: {}", toMerge.getLabel());
             }
 
@@ -131,10 +146,32 @@ public class MergePool<V,E> {
         }
 
         // now let's find our return value - what did we merge the graph root to?
-        DAGNode<V, E> newRoot = mergedMap.get(graph);
-        // remember all its nodes for future merge operations
-        pool.addAll(newRoot.getReachableNodes());
-        // and we're done
-        return newRoot;
+        // all its nodes are now in the pool for future merge operations
+        return mergedMap.get(graph);
+    }
+
+    /**
+     * Get the number of nodes in the pool.
+     * @return The number of distinct nodes merged so far.
+     */
+    public int getPoolSize() {
+        return pool.size();
+    }
+
+    /**
+     * Get the number of nodes that have been merged into an existing pool node.  This includes
+     * the nodes of graphs that were already entirely in the pool.
+     * @return The number of nodes found in the pool.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get the number of nodes that have been added to the pool.
+     * @return The number of nodes not found in the pool.
+     */
+    public long getMissCount() {
+        return missCount;
     }
 }
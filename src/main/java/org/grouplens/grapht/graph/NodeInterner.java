@@ -0,0 +1,148 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.graph;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+import org.apache.commons.lang3.tuple.Pair;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hash-conses DAG nodes.  Builders obtained from an interner build the canonical node for their
+ * label and outgoing edges: if a node with an equal label and the same edges (edge labels and
+ * target nodes) has already been built by this interner and is still in use, it is returned
+ * instead of a new node.  When the targets are themselves interned, structurally equal graphs
+ * are therefore shared as they are built.
+ *
+ * <p>Nodes are held weakly, so the interner does not keep otherwise-unused graphs alive.
+ *
+ * @param <V> The type of node labels.
+ * @param <E> The type of edge labels.
+ * @since 0.9
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public class NodeInterner<V,E> {
+    private final ConcurrentMap<Key<V,E>, DAGNode<V,E>> table;
+
+    private NodeInterner() {
+        table = new MapMaker().weakValues().makeMap();
+    }
+
+    /**
+     * Create a new node interner.
+     * @param <V> The type of node labels.
+     * @param <E> The type of edge labels.
+     * @return A new, empty interner.
+     */
+    public static <V,E> NodeInterner<V,E> create() {
+        return new NodeInterner<V, E>();
+    }
+
+    /**
+     * Create a builder whose {@link DAGNodeBuilder#build()} method returns interned nodes.
+     * @return A new builder.
+     */
+    public DAGNodeBuilder<V,E> newBuilder() {
+        return new DAGNodeBuilder<V, E>(null, this);
+    }
+
+    /**
+     * Create a builder whose {@link DAGNodeBuilder#build()} method returns interned nodes.
+     * @param label The node label.
+     * @return A new builder.
+     */
+    public DAGNodeBuilder<V,E> newBuilder(V label) {
+        return new DAGNodeBuilder<V, E>(label, this);
+    }
+
+    /**
+     * Get the canonical node with the specified label and no outgoing edges.
+     * @param label The node label.
+     * @return The node.
+     */
+    public DAGNode<V,E> singleton(V label) {
+        Preconditions.checkNotNull(label, "node label");
+        return intern(label, ImmutableSet.<Pair<DAGNode<V,E>,E>>of());
+    }
+
+    /**
+     * Get the number of nodes currently interned.  Nodes that are no longer used may be counted
+     * until they are cleared by the garbage collector.
+     * @return The number of interned nodes.
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Get the canonical node for a label and edge set, creating it if necessary.
+     */
+    @Nonnull
+    DAGNode<V,E> intern(@Nonnull V label, Set<Pair<DAGNode<V,E>,E>> edges) {
+        Key<V,E> key = new Key<V, E>(label, ImmutableSet.copyOf(edges));
+        DAGNode<V,E> node = table.get(key);
+        if (node == null) {
+            DAGNode<V,E> created = new DAGNode<V, E>(label, key.edges);
+            node = table.putIfAbsent(key, created);
+            if (node == null) {
+                node = created;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Intern table key.  Nodes compare by identity, so edges are equal when they have equal
+     * labels and the same target node.
+     */
+    private static final class Key<V,E> {
+        private final V label;
+        private final ImmutableSet<Pair<DAGNode<V,E>,E>> edges;
+        private final int hashCode;
+
+        Key(V lbl, ImmutableSet<Pair<DAGNode<V,E>,E>> es) {
+            label = lbl;
+            edges = es;
+            hashCode = 31 * label.hashCode() + edges.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            } else if (o instanceof Key) {
+                Key<?,?> ok = (Key<?,?>) o;
+                return hashCode == ok.hashCode && label.equals(ok.label) && edges.equals(ok.edges);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.graph;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+/**
+ * An incrementally-maintained index of the incoming edges (parent pointers) of a growing graph.
+ * It lets a graph that is repeatedly modified by {@linkplain #replaceNode(DAGNode, DAGNode, Map)
+ * replacing nodes} be updated by copying only the ancestors of each replaced node, instead of
+ * walking the whole graph for every replacement as {@link DAGNode#replaceNode(DAGNode, DAGNode, Map)}
+ * must.  The index is updated as the root changes, so membership tests are also constant-time.
+ *
+ * <p>This class is not thread-safe; its owner must serialize modifications.  The graphs it
+ * produces are ordinary immutable graphs.
+ *
+ * @param <V> The type of node labels.
+ * @param <E> The type of edge labels.
+ * @since 0.9
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+public class ParentIndex<V,E> {
+    private final SetMultimap<DAGNode<V,E>,DAGEdge<V,E>> incoming;
+    private DAGNode<V,E> root;
+
+    private ParentIndex(DAGNode<V,E> root) {
+        incoming = HashMultimap.create();
+        this.root = root;
+        addEdges(root);
+    }
+
+    /**
+     * Create a parent index for a graph.
+     * @param root The root of the graph.
+     * @param <V> The type of node labels.
+     * @param <E> The type of edge labels.
+     * @return A parent index for the graph.
+     */
+    public static <V,E> ParentIndex<V,E> create(@Nonnull DAGNode<V,E> root) {
+        Preconditions.checkNotNull(root, "root node");
+        return new ParentIndex<V, E>(root);
+    }
+
+    /**
+     * Get the root of the indexed graph.
+     * @return The current root.
+     */
+    @Nonnull
+    public DAGNode<V,E> getRoot() {
+        return root;
+    }
+
+    /**
+     * Query whether a node is in the indexed graph.
+     * @param node The node.
+     * @return {@code true} if {@code node} is reachable from the root.
+     */
+    public boolean contains(DAGNode<V,E> node) {
+        return root.equals(node) || incoming.containsKey(node);
+    }
+
+    /**
+     * Get the incoming edges of a node in the graph.
+     * @param node The node.
+     * @return The edges from nodes in the graph to {@code node}.
+     */
+    @Nonnull
+    public Set<DAGEdge<V,E>> getIncomingEdges(DAGNode<V,E> node) {
+        return Collections.unmodifiableSet(incoming.get(node));
+    }
+
+    /**
+     * Change the root of the graph.  The new root will usually share most of its nodes with the
+     * old one (for example, when it is a copy of the old root with more edges); only the nodes
+     * that are added or dropped are visited.
+     *
+     * @param newRoot The new root.
+     */
+    public void setRoot(@Nonnull DAGNode<V,E> newRoot) {
+        Preconditions.checkNotNull(newRoot, "root node");
+        if (newRoot.equals(root)) {
+            return;
+        }
+        DAGNode<V,E> oldRoot = root;
+        boolean known = contains(newRoot);
+        root = newRoot;
+        // add before removing, so nodes shared by both roots stay in the index
+        if (!known) {
+            addEdges(newRoot);
+        }
+        removeEdges(Collections.singleton(oldRoot));
+    }
+
+    /**
+     * Replace a node in the graph, copying only the nodes from which it is reachable.  The result
+     * is the same as that of {@link DAGNode#replaceNode(DAGNode, DAGNode, Map)} on the root, and
+     * the new graph becomes the root of this index.
+     *
+     * @param node The node to replace.
+     * @param replacement The replacement node.  It must not reach {@code node}.
+     * @param memory A table to receive node replacements.  Each copied node is mapped to its
+     *               replacement.
+     * @return The new root of the graph.
+     */
+    public DAGNode<V,E> replaceNode(DAGNode<V,E> node, DAGNode<V,E> replacement,
+                                    Map<DAGNode<V,E>,DAGNode<V,E>> memory) {
+        if (!contains(node)) {
+            return root;
+        }
+
+        // find the ancestors, counting how many of each one's edges lead to other ancestors
+        Map<DAGNode<V,E>,Integer> pending = Maps.newHashMap();
+        Deque<DAGNode<V,E>> work = new ArrayDeque<DAGNode<V, E>>();
+        pending.put(node, 0);
+        work.add(node);
+        while (!work.isEmpty()) {
+            DAGNode<V,E> child = work.remove();
+            for (DAGEdge<V,E> edge: incoming.get(child)) {
+                DAGNode<V,E> parent = edge.getHead();
+                Integer count = pending.get(parent);
+                if (count == null) {
+                    work.add(parent);
+                    count = 0;
+                }
+                pending.put(parent, count + 1);
+            }
+        }
+
+        // copy the ancestors once all of their replaced children are ready
+        List<DAGNode<V,E>> copied = Lists.newArrayListWithCapacity(pending.size());
+        memory.put(node, replacement);
+        work.add(node);
+        while (!work.isEmpty()) {
+            DAGNode<V,E> child = work.remove();
+            for (DAGEdge<V,E> edge: incoming.get(child)) {
+                DAGNode<V,E> parent = edge.getHead();
+                int count = pending.get(parent) - 1;
+                pending.put(parent, count);
+                if (count == 0) {
+                    DAGNodeBuilder<V,E> bld = DAGNode.newBuilder(parent.getLabel());
+                    for (DAGEdge<V,E> out: parent.getOutgoingEdges()) {
+                        DAGNode<V,E> tail = memory.get(out.getTail());
+                        bld.addEdge(tail == null ? out.getTail() : tail, out.getLabel());
+                    }
+                    DAGNode<V,E> copy = bld.build();
+                    memory.put(parent, copy);
+                    copied.add(copy);
+                    work.add(parent);
+                }
+            }
+        }
+
+        // index the new nodes, then drop the old ones
+        DAGNode<V,E> newRoot = memory.get(root);
+        assert newRoot != null;
+        root = newRoot;
+        if (!incoming.containsKey(replacement)) {
+            addEdges(replacement);
+        }
+        for (DAGNode<V,E> copy: copied) {
+            for (DAGEdge<V,E> edge: copy.getOutgoingEdges()) {
+                incoming.put(edge.getTail(), edge);
+            }
+        }
+        removeEdges(pending.keySet());
+        return root;
+    }
+
+    /**
+     * Add the edges of a node that is new to the index, and of any new nodes below it.
+     */
+    private void addEdges(DAGNode<V,E> node) {
+        Deque<DAGNode<V,E>> work = new ArrayDeque<DAGNode<V, E>>();
+        work.push(node);
+        while (!work.isEmpty()) {
+            for (DAGEdge<V,E> edge: work.pop().getOutgoingEdges()) {
+                DAGNode<V,E> tail = edge.getTail();
+                boolean known = contains(tail);
+                incoming.put(tail, edge);
+                if (!known) {
+                    work.push(tail);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the outgoing edges of nodes that have left the graph, and of any nodes that are
+     * left with no parents as a result.
+     */
+    private void removeEdges(Collection<DAGNode<V,E>> nodes) {
+        Set<DAGNode<V,E>> removed = Sets.newHashSet(nodes);
+        Deque<DAGNode<V,E>> work = new ArrayDeque<DAGNode<V, E>>(nodes);
+        while (!work.isEmpty()) {
+            DAGNode<V,E> node = work.pop();
+            incoming.removeAll(node);
+            for (DAGEdge<V,E> edge: node.getOutgoingEdges()) {
+                DAGNode<V,E> tail = edge.getTail();
+                incoming.remove(tail, edge);
+                if (!contains(tail) && removed.add(tail)) {
+                    work.push(tail);
+                }
+            }
+        }
+    }
+}
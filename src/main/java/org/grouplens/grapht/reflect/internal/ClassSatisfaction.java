@@ -19,6 +19,7 @@
 package org.grouplens.grapht.reflect.internal;
 
 import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.InstantiationBackend;
 import org.grouplens.grapht.reflect.*;
 import org.grouplens.grapht.util.ClassProxy;
 import org.grouplens.grapht.util.Preconditions;
@@ -29,6 +30,7 @@ import javax.inject.Singleton;
 import java.io.*;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 /**
@@ -40,6 +42,8 @@ import java.util.List;
 public class ClassSatisfaction implements Satisfaction, Serializable {
     private static final long serialVersionUID = -1L;
     private final transient Class<?> type;
+    // compiled lazily on first use for each backend, and shared by all providers of this satisfaction
+    private final transient AtomicReferenceArray<InjectionPlan<?>> plans;
 
     /**
      * Create a satisfaction wrapping the given class type.
@@ -53,6 +57,7 @@ public class ClassSatisfaction implements Satisfaction, Serializable {
 
         this.type = Types.box(type);
         Preconditions.isInstantiable(this.type);
+        plans = new AtomicReferenceArray<InjectionPlan<?>>(InstantiationBackend.values().length);
     }
     
     @Override
@@ -86,9 +91,34 @@ public class ClassSatisfaction implements Satisfaction, Serializable {
     }
 
     @Override
-    @SuppressWarnings({ "rawtypes", "unchecked" })
     public Provider<?> makeProvider(ProviderSource dependencies) {
-        return new InjectionProviderImpl(type, getDependencies(), dependencies);
+        return makeProvider(dependencies, InstantiationBackend.REFLECTION);
+    }
+
+    /**
+     * Create a provider that instantiates this satisfaction's type with a particular backend.
+     *
+     * @param dependencies The providers of this satisfaction's dependencies.
+     * @param backend The backend to use for invoking constructors and injection points.
+     * @return A provider that instantiates this satisfaction's type.
+     * @see #makeProvider(ProviderSource)
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public Provider<?> makeProvider(ProviderSource dependencies, InstantiationBackend backend) {
+        return new InjectionProviderImpl(getPlan(backend), dependencies);
+    }
+
+    /**
+     * Get the compiled plan for instantiating this satisfaction's type.  Racing threads
+     * may each compile a plan, but plans are interchangeable so either may be kept.
+     */
+    private InjectionPlan<?> getPlan(InstantiationBackend backend) {
+        InjectionPlan<?> p = plans.get(backend.ordinal());
+        if (p == null) {
+            p = InjectionPlan.create(type, ReflectionDesire.getDesires(type), backend);
+            plans.set(backend.ordinal(), p);
+        }
+        return p;
     }
     
     @Override
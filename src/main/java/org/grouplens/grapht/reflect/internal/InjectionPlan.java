@@ -0,0 +1,290 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.reflect.internal;
+
+import org.grouplens.grapht.InjectionException;
+import org.grouplens.grapht.InstantiationBackend;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.ProviderSource;
+import org.grouplens.grapht.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.Immutable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * InjectionPlan is the compiled form of the desires of a type.  It finds the
+ * constructor, makes the members accessible, and groups setter parameters once,
+ * so that instantiating the type only has to look up providers and invoke the
+ * members in order.  Members are invoked through {@link MemberInvoker}s for the
+ * plan's {@link InstantiationBackend}.
+ *
+ * @param <T> The type instantiated by the plan.
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+class InjectionPlan<T> {
+    private static final Logger logger = LoggerFactory.getLogger(InjectionPlan.class);
+
+    private final Class<T> type;
+    private final Constructor<T> constructor;
+    private final MemberInvoker constructorInvoker;
+    private final Argument[] constructorArgs;
+    private final int constructorArity;
+    private final Step[] steps;
+
+    private InjectionPlan(Class<T> type, Constructor<T> ctor, MemberInvoker ctorInvoker,
+                          Argument[] ctorArgs, Step[] steps) {
+        this.type = type;
+        constructor = ctor;
+        constructorInvoker = ctorInvoker;
+        constructorArgs = ctorArgs;
+        constructorArity = ctor.getParameterTypes().length;
+        this.steps = steps;
+    }
+
+    /**
+     * Compile the plan for instantiating a type with reflection.
+     *
+     * @param type The type to instantiate.
+     * @param desires The desires of the type, as returned by {@link ReflectionDesire#getDesires(Class)}.
+     * @return The plan for instantiating {@code type}.
+     */
+    public static <T> InjectionPlan<T> create(Class<T> type, List<ReflectionDesire> desires) {
+        return create(type, desires, InstantiationBackend.REFLECTION);
+    }
+
+    /**
+     * Compile the plan for instantiating a type.
+     *
+     * @param type The type to instantiate.
+     * @param desires The desires of the type, as returned by {@link ReflectionDesire#getDesires(Class)}.
+     * @param backend The backend to invoke members with.
+     * @return The plan for instantiating {@code type}.
+     */
+    public static <T> InjectionPlan<T> create(Class<T> type, List<ReflectionDesire> desires,
+                                              InstantiationBackend backend) {
+        Preconditions.notNull("type", type);
+        Preconditions.notNull("desires", desires);
+        Preconditions.notNull("backend", backend);
+
+        List<Argument> ctorArgs = new ArrayList<Argument>();
+        List<Step> steps = new ArrayList<Step>();
+        // setter parameters seen so far, for setters whose parameters are not all known
+        Map<Method, List<Argument>> pendingSetters = new HashMap<Method, List<Argument>>();
+        Constructor<T> ctor = null;
+
+        for (ReflectionDesire d: desires) {
+            InjectionPoint ip = d.getInjectionPoint();
+            if (ip instanceof ConstructorParameterInjectionPoint) {
+                ConstructorParameterInjectionPoint cp = (ConstructorParameterInjectionPoint) ip;
+                if (ctor == null) {
+                    // since we only allow one injectable constructor, any ConstructorParameterInjectionPoint
+                    // will have the same constructor as all other constructor parameter injection points
+                    ctor = castConstructor(cp.getMember());
+                    logger.debug("Using constructor annotated with @Inject: {}", ctor);
+                }
+                ctorArgs.add(new Argument(d, cp.getParameterIndex()));
+            } else if (ip instanceof FieldInjectionPoint) {
+                steps.add(new FieldStep(type, new Argument(d, 0), ((FieldInjectionPoint) ip).getMember(),
+                                        backend));
+            } else if (ip instanceof SetterInjectionPoint) {
+                SetterInjectionPoint sp = (SetterInjectionPoint) ip;
+                Method setter = sp.getMember();
+                List<Argument> args = pendingSetters.get(setter);
+                if (args == null) {
+                    args = new ArrayList<Argument>();
+                    pendingSetters.put(setter, args);
+                }
+                args.add(new Argument(d, sp.getParameterIndex()));
+                if (args.size() == setter.getParameterTypes().length) {
+                    // all parameters known, the setter is invoked at this point in the order
+                    pendingSetters.remove(setter);
+                    steps.add(new MethodStep(type, setter, args.toArray(new Argument[args.size()]),
+                                             backend));
+                }
+            } else if (ip instanceof NoArgumentInjectionPoint) {
+                Method method = ((NoArgumentInjectionPoint) ip).getMember();
+                steps.add(new MethodStep(type, method, new Argument[0], backend));
+            }
+        }
+
+        if (ctor == null) {
+            try {
+                logger.debug("Using default constructor for {}", type);
+                ctor = type.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+                // this plan is being built for a ClassSatisfaction or a
+                // ProviderClassSatisfaction, both of which assert that the type is
+                // instantiable, so this should never happen
+                throw new RuntimeException("Unexpected exception", e);
+            }
+        }
+        ctor.setAccessible(true);
+
+        return new InjectionPlan<T>(type, ctor, MemberInvoker.forConstructor(ctor, backend),
+                                    ctorArgs.toArray(new Argument[ctorArgs.size()]),
+                                    steps.toArray(new Step[steps.size()]));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Constructor<T> castConstructor(Constructor<?> ctor) {
+        return (Constructor<T>) ctor;
+    }
+
+    /**
+     * Get the type instantiated by this plan.
+     * @return The type of object produced by {@link #instantiate(ProviderSource)}.
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Create and inject an instance.
+     *
+     * @param providers The providers satisfying the plan's desires.
+     * @return A new, fully-injected instance.
+     * @throws InjectionException if instantiation or injection fails.
+     */
+    public T instantiate(ProviderSource providers) {
+        Object[] ctorArgs = new Object[constructorArity];
+        for (Argument arg: constructorArgs) {
+            ctorArgs[arg.index] = arg.get(providers);
+        }
+
+        // create the instance that we are injecting
+        T instance;
+        try {
+            logger.trace("Invoking constructor {} with arguments {}", constructor, ctorArgs);
+            instance = type.cast(constructorInvoker.invoke(null, ctorArgs));
+        } catch (Exception e) {
+            throw new InjectionException(type, constructor, e);
+        }
+
+        // satisfy dependencies in the order of the desire list, which was
+        // prepared to comply with JSR 330
+        for (Step step: steps) {
+            step.inject(instance, providers);
+        }
+
+        // the instance has been fully configured
+        return instance;
+    }
+
+    /**
+     * A desire together with its position in a member's parameter list.
+     */
+    private static class Argument {
+        private final ReflectionDesire desire;
+        private final int index;
+        private final boolean nullable;
+
+        public Argument(ReflectionDesire desire, int index) {
+            this.desire = desire;
+            this.index = index;
+            // computing nullability consults annotations, so only do it once
+            nullable = desire.getInjectionPoint().isNullable();
+        }
+
+        public Object get(ProviderSource providers) {
+            Object value = providers.apply(desire).get();
+            if (value == null && !nullable) {
+                Member member = desire.getInjectionPoint().getMember();
+                throw new InjectionException(member.getDeclaringClass(), member,
+                                             "Injection point is not annotated with @Nullable, but binding configuration provided a null value");
+            }
+            return value;
+        }
+    }
+
+    /**
+     * A step injecting dependencies into an instance after construction.
+     */
+    private static abstract class Step {
+        public abstract void inject(Object instance, ProviderSource providers);
+    }
+
+    private static class FieldStep extends Step {
+        private final Class<?> type;
+        private final Argument argument;
+        private final Field field;
+        private final MemberInvoker setter;
+
+        public FieldStep(Class<?> type, Argument arg, Field field, InstantiationBackend backend) {
+            this.type = type;
+            argument = arg;
+            this.field = field;
+            field.setAccessible(true);
+            setter = MemberInvoker.forFieldSetter(field, backend);
+        }
+
+        @Override
+        public void inject(Object instance, ProviderSource providers) {
+            Object value = argument.get(providers);
+            try {
+                logger.trace("Setting field {} with arguments {}", field, value);
+                setter.invoke(instance, new Object[]{value});
+            } catch (Exception e) {
+                throw new InjectionException(type, field, e);
+            }
+        }
+    }
+
+    private static class MethodStep extends Step {
+        private final Class<?> type;
+        private final Method method;
+        private final MemberInvoker invoker;
+        private final Argument[] arguments;
+
+        /**
+         * Create a method step.
+         * @param type The type being instantiated.
+         * @param method The method to invoke.
+         * @param args The arguments, in the order their providers should be queried.
+         * @param backend The backend to invoke the method with.
+         */
+        public MethodStep(Class<?> type, Method method, Argument[] args, InstantiationBackend backend) {
+            this.type = type;
+            this.method = method;
+            arguments = args;
+            method.setAccessible(true);
+            invoker = MemberInvoker.forMethod(method, backend);
+        }
+
+        @Override
+        public void inject(Object instance, ProviderSource providers) {
+            Object[] values = new Object[arguments.length];
+            for (Argument arg: arguments) {
+                values[arg.index] = arg.get(providers);
+            }
+            try {
+                logger.trace("Invoking method {} with arguments {}", method, values);
+                invoker.invoke(instance, values);
+            } catch (Exception e) {
+                throw new InjectionException(type, method, e);
+            }
+        }
+    }
+}
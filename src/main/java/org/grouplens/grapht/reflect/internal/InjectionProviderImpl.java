@@ -18,20 +18,11 @@
  */
 package org.grouplens.grapht.reflect.internal;
 
-import org.grouplens.grapht.InjectionException;
-import org.grouplens.grapht.reflect.InjectionPoint;
 import org.grouplens.grapht.reflect.ProviderSource;
 import org.grouplens.grapht.util.Preconditions;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.inject.Provider;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * InjectionProviderImpl is a Provider implementation capable of creating any
@@ -42,10 +33,7 @@ import java.util.Map;
  * @param <T> The object type that is provided
  */
 public class InjectionProviderImpl<T> implements Provider<T> {
-    private static final Logger logger = LoggerFactory.getLogger(InjectionProviderImpl.class);
-    
-    private final Class<T> type;
-    private final List<ReflectionDesire> desires;
+    private final InjectionPlan<T> plan;
     private final ProviderSource providers;
 
     /**
@@ -58,151 +46,26 @@ public class InjectionProviderImpl<T> implements Provider<T> {
      * @param providers The providers that satisfy the desires of the type
      */
     public InjectionProviderImpl(Class<T> type, List<ReflectionDesire> desires, ProviderSource providers) {
-        Preconditions.notNull("type", type);
-        Preconditions.notNull("desires", desires);
+        this(InjectionPlan.create(type, desires), providers);
+    }
+
+    /**
+     * Create an InjectionProviderImpl that instantiates objects with a
+     * previously-compiled plan.
+     *
+     * @param plan The plan for instantiating the type
+     * @param providers The providers that satisfy the desires of the type
+     */
+    InjectionProviderImpl(InjectionPlan<T> plan, ProviderSource providers) {
+        Preconditions.notNull("plan", plan);
         Preconditions.notNull("providers", providers);
-        
-        this.type = type;
-        this.desires = desires;
+
+        this.plan = plan;
         this.providers = providers;
     }
 
     @Override
     public T get() {
-        // find constructor and build up necessary constructor arguments
-        Constructor<T> ctor = getConstructor();
-        Object[] ctorArgs = new Object[ctor.getParameterTypes().length];
-        for (ReflectionDesire d: desires) {
-            if (d.getInjectionPoint() instanceof ConstructorParameterInjectionPoint) {
-                // this desire is a constructor argument so create it now
-                Provider<?> provider = providers.apply(d);
-                ConstructorParameterInjectionPoint cd = (ConstructorParameterInjectionPoint) d.getInjectionPoint();
-                ctorArgs[cd.getParameterIndex()] = checkNull(cd, provider.get());
-            }
-        }
-        
-        // create the instance that we are injecting
-        T instance;
-        try {
-            logger.trace("Invoking constructor {} with arguments {}", ctor, ctorArgs);
-            ctor.setAccessible(true);
-            instance = ctor.newInstance(ctorArgs);
-        } catch (Exception e) {
-            throw new InjectionException(type, ctor, e);
-        }
-        
-        // satisfy dependencies in the order of the list, which was
-        // prepared to comply with JSR 330
-        Map<Method, InjectionArgs> settersAndArguments = new HashMap<Method, InjectionArgs>();
-        for (ReflectionDesire d: desires) {
-            if (d.getInjectionPoint() instanceof FieldInjectionPoint) {
-                FieldInjectionPoint fd = (FieldInjectionPoint) d.getInjectionPoint();
-                Object value = checkNull(fd, providers.apply(d).get());
-                Field field = fd.getMember();
-
-                try {
-                    logger.trace("Setting field {} with arguments {}", field, value);
-                    field.setAccessible(true);
-                    field.set(instance, value);
-                } catch (Exception e) {
-                    throw new InjectionException(type, fd.getMember(), e);
-                }
-            } else if (d.getInjectionPoint() instanceof SetterInjectionPoint) {
-                // collect parameters before invoking
-                SetterInjectionPoint sd = (SetterInjectionPoint) d.getInjectionPoint();
-                InjectionArgs args = settersAndArguments.get(sd.getMember());
-                Method setter = sd.getMember();
-
-                if (args == null) {
-                    // first encounter of this method
-                    args = new InjectionArgs(setter.getParameterTypes().length);
-                    settersAndArguments.put(setter, args);
-                }
-                
-                Provider<?> provider = providers.apply(d);
-                args.set(sd.getParameterIndex(), checkNull(sd, provider.get()));
-                
-                if (args.isCompleted()) {
-                    // all parameters initialized, invoke the setter with all arguments
-                    try {
-                        logger.trace("Invoking setter {} with arguments {}", setter, args.arguments);
-                        setter.setAccessible(true);
-                        setter.invoke(instance, args.arguments);
-                    } catch (Exception e) {
-                        throw new InjectionException(type, setter, e);
-                    }
-                }
-            } else if (d.getInjectionPoint() instanceof NoArgumentInjectionPoint) {
-                // just invoke the method
-                Method method = ((NoArgumentInjectionPoint) d.getInjectionPoint()).getMember();
-                try {
-                    logger.trace("Invoking no-argument injection point {}", d.getInjectionPoint());
-                    method.setAccessible(true);
-                    method.invoke(instance);
-                } catch (Exception e) {
-                    throw new InjectionException(type, method, e);
-                }
-            }
-        }
-        
-        // the instance has been fully configured
-        return instance;
-    }
-    
-    @SuppressWarnings("unchecked")
-    private Constructor<T> getConstructor() {
-        for (ReflectionDesire d: desires) {
-            if (d.getInjectionPoint() instanceof ConstructorParameterInjectionPoint) {
-                // since we only allow one injectable constructor, any ConstructorParameterInjectionPoint
-                // will have the same constructor as all other constructor parameter injection points
-                Constructor<T> ctor = (Constructor<T>) ((ConstructorParameterInjectionPoint) d.getInjectionPoint()).getMember();
-                logger.debug("Using constructor annotated with @Inject: {}", ctor);
-                return ctor;
-            }
-        }
-        
-        try {
-            logger.debug("Using default constructor for {}", type);
-            return type.getDeclaredConstructor();
-        } catch (NoSuchMethodException e) {
-            // this constructor is being invoked for a ClassSatisfaction or a 
-            // ProviderClassSatisfaction, both of which assert that the type is
-            // instantiable, so this should never happen
-            throw new RuntimeException("Unexpected exception", e);
-        }
-    }
-    
-    private static Object checkNull(InjectionPoint injectPoint, Object value) {
-        if (value == null && !injectPoint.isNullable()) {
-            throw new InjectionException(injectPoint.getMember().getDeclaringClass(),
-                                         injectPoint.getMember(), 
-                                         "Injection point is not annotated with @Nullable, but binding configuration provided a null value");
-        } else {
-            return value;
-        }
-    }
-    
-    private static class InjectionArgs {
-        private final Object[] arguments;
-        private final boolean[] injected;
-        
-        public InjectionArgs(int num) {
-            arguments = new Object[num];
-            injected = new boolean[num];
-        }
-        
-        public void set(int i, Object o) {
-            arguments[i] =o;
-            injected[i] = true;
-        }
-        
-        public boolean isCompleted() {
-            for (int i = 0; i < injected.length; i++) {
-                if (!injected[i]) {
-                    return false;
-                }
-            }
-            return true;
-        }
+        return plan.instantiate(providers);
     }
 }
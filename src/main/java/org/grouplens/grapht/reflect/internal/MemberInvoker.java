@@ -0,0 +1,143 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.reflect.internal;
+
+import org.grouplens.grapht.InstantiationBackend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Uniform interface for invoking a constructor, method or field setter, used by
+ * {@link InjectionPlan}.  Invokers are created for a particular {@linkplain InstantiationBackend
+ * backend}, and expect their member to have already been made accessible.
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+abstract class MemberInvoker {
+    private static final Logger logger = LoggerFactory.getLogger(MemberInvoker.class);
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * Invoke the member.
+     *
+     * @param target The object to invoke the member on; ignored for constructors.
+     * @param args The member's arguments (the value, for field setters).
+     * @return The result of the invocation (the new instance, for constructors).
+     * @throws InvocationTargetException if the member throws an exception.  Method handle
+     *         invokers also report argument conversion failures this way.
+     * @throws Exception if the member cannot be invoked with the given arguments.
+     */
+    public abstract Object invoke(Object target, Object[] args) throws Exception;
+
+    public static MemberInvoker forConstructor(final Constructor<?> ctor, InstantiationBackend backend) {
+        if (backend == InstantiationBackend.METHOD_HANDLES) {
+            try {
+                int n = ctor.getParameterTypes().length;
+                MethodHandle mh = LOOKUP.unreflectConstructor(ctor);
+                return new HandleInvoker(MethodHandles.dropArguments(spread(mh, n), 0, Object.class));
+            } catch (IllegalAccessException e) {
+                logger.debug("cannot unreflect {}, falling back to reflection", ctor);
+            }
+        }
+        return new MemberInvoker() {
+            @Override
+            public Object invoke(Object target, Object[] args) throws Exception {
+                return ctor.newInstance(args);
+            }
+        };
+    }
+
+    public static MemberInvoker forMethod(final Method method, InstantiationBackend backend) {
+        if (backend == InstantiationBackend.METHOD_HANDLES) {
+            try {
+                int n = method.getParameterTypes().length;
+                MethodHandle mh = LOOKUP.unreflect(method);
+                // the receiver is the first argument and is not spread
+                mh = mh.asType(MethodType.genericMethodType(n + 1))
+                       .asSpreader(Object[].class, n);
+                return new HandleInvoker(mh);
+            } catch (IllegalAccessException e) {
+                logger.debug("cannot unreflect {}, falling back to reflection", method);
+            }
+        }
+        return new MemberInvoker() {
+            @Override
+            public Object invoke(Object target, Object[] args) throws Exception {
+                return method.invoke(target, args);
+            }
+        };
+    }
+
+    public static MemberInvoker forFieldSetter(final Field field, InstantiationBackend backend) {
+        if (backend == InstantiationBackend.METHOD_HANDLES) {
+            try {
+                MethodHandle mh = LOOKUP.unreflectSetter(field);
+                mh = mh.asType(MethodType.genericMethodType(2))
+                       .asSpreader(Object[].class, 1);
+                return new HandleInvoker(mh);
+            } catch (IllegalAccessException e) {
+                logger.debug("cannot unreflect setter for {}, falling back to reflection", field);
+            }
+        }
+        return new MemberInvoker() {
+            @Override
+            public Object invoke(Object target, Object[] args) throws Exception {
+                field.set(target, args[0]);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Adapt a handle taking {@code n} arguments to take them as a single object array.
+     */
+    private static MethodHandle spread(MethodHandle mh, int n) {
+        return mh.asType(MethodType.genericMethodType(n))
+                 .asSpreader(Object[].class, n);
+    }
+
+    /**
+     * Invoker backed by a handle of type {@code (Object,Object[])Object}.
+     */
+    private static class HandleInvoker extends MemberInvoker {
+        private final MethodHandle handle;
+
+        public HandleInvoker(MethodHandle mh) {
+            handle = mh;
+        }
+
+        @Override
+        public Object invoke(Object target, Object[] args) throws Exception {
+            try {
+                return (Object) handle.invokeExact(target, args);
+            } catch (Throwable th) {
+                // handles do not wrap exceptions, so wrap them like reflection does
+                throw new InvocationTargetException(th);
+            }
+        }
+    }
+}
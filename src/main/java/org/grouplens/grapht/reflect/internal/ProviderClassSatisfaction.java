@@ -19,6 +19,7 @@
 package org.grouplens.grapht.reflect.internal;
 
 import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.InstantiationBackend;
 import org.grouplens.grapht.reflect.*;
 import org.grouplens.grapht.util.ClassProxy;
 import org.grouplens.grapht.util.Preconditions;
@@ -29,6 +30,7 @@ import javax.inject.Singleton;
 import java.io.*;
 import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * ProviderClassSatisfaction is a satisfaction implementation that satisfies a
@@ -39,6 +41,8 @@ import java.util.List;
 public class ProviderClassSatisfaction implements Satisfaction, Serializable {
     private static final long serialVersionUID = -1L;
     private final transient Class<? extends Provider<?>> providerType;
+    // compiled lazily on first use for each backend, and shared by all providers of this satisfaction
+    private final transient AtomicReferenceArray<InjectionPlan<? extends Provider<?>>> plans;
 
     /**
      * Create a ProviderClassSatisfaction that wraps a given provider type.
@@ -53,6 +57,7 @@ public class ProviderClassSatisfaction implements Satisfaction, Serializable {
         Preconditions.isInstantiable(providerType);
         
         this.providerType = providerType;
+        plans = new AtomicReferenceArray<InjectionPlan<? extends Provider<?>>>(InstantiationBackend.values().length);
     }
     
     @Override
@@ -94,13 +99,38 @@ public class ProviderClassSatisfaction implements Satisfaction, Serializable {
     }
 
     @Override
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public Provider<?> makeProvider(ProviderSource dependencies) {
+        return makeProvider(dependencies, InstantiationBackend.REFLECTION);
+    }
+
+    /**
+     * Instantiate the provider class with a particular backend.
+     *
+     * @param dependencies The providers of the provider class's dependencies.
+     * @param backend The backend to use for invoking constructors and injection points.
+     * @return A new instance of the provider class.
+     * @see #makeProvider(ProviderSource)
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public Provider<?> makeProvider(ProviderSource dependencies, InstantiationBackend backend) {
         // we have to use the raw type because we don't have enough information,
         // but we can assume correctly that it will build a provider
-        Provider<Provider<?>> providerBuilder = new InjectionProviderImpl(providerType, getDependencies(), dependencies);
+        Provider<Provider<?>> providerBuilder = new InjectionProviderImpl(getPlan(backend), dependencies);
         return providerBuilder.get();
     }
+
+    /**
+     * Get the compiled plan for instantiating the provider type.  Racing threads may
+     * each compile a plan, but plans are interchangeable so either may be kept.
+     */
+    private InjectionPlan<? extends Provider<?>> getPlan(InstantiationBackend backend) {
+        InjectionPlan<? extends Provider<?>> p = plans.get(backend.ordinal());
+        if (p == null) {
+            p = InjectionPlan.create(providerType, ReflectionDesire.getDesires(providerType), backend);
+            plans.set(backend.ordinal(), p);
+        }
+        return p;
+    }
     
     @Override
     public boolean equals(Object o) {
@@ -18,6 +18,7 @@
  */
 package org.grouplens.grapht.reflect.internal;
 
+import com.google.common.cache.CacheStats;
 import org.grouplens.grapht.InvalidBindingException;
 import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.reflect.InjectionPoint;
@@ -33,6 +34,7 @@ import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ReflectionDesire is an implementation of desire that contains all necessary
@@ -44,15 +46,68 @@ import java.util.*;
 public class ReflectionDesire implements Desire, Serializable {
     private static final long serialVersionUID = -1L;
 
+    private static final AtomicLong desireRequests = new AtomicLong();
+    private static final AtomicLong desireComputations = new AtomicLong();
+    private static final AtomicLong desireComputationFailures = new AtomicLong();
+    private static final AtomicLong desireComputationTime = new AtomicLong();
+
+    /**
+     * Cache of the desires of each class.  A class value lives with its class, so cached
+     * desires do not keep classes (or their class loaders) from being unloaded.
+     */
+    private static final ClassValue<List<ReflectionDesire>> desireCache = new ClassValue<List<ReflectionDesire>>() {
+        @Override
+        protected List<ReflectionDesire> computeValue(Class<?> type) {
+            long start = System.nanoTime();
+            try {
+                List<ReflectionDesire> desires = computeDesires(type);
+                desireComputations.incrementAndGet();
+                return desires;
+            } catch (RuntimeException e) {
+                // failures are not cached, the next request will scan the class again
+                desireComputationFailures.incrementAndGet();
+                throw e;
+            } finally {
+                desireComputationTime.addAndGet(System.nanoTime() - start);
+            }
+        }
+    };
+
     /**
      * Return a list of desires that must satisfied in order to instantiate the
-     * given type.
+     * given type.  The desires of each class are computed once and cached.
      *
      * @param type The class type whose dependencies will be queried
      * @return The dependency desires for the given type
      * @throws NullPointerException if the type is null
      */
     public static List<ReflectionDesire> getDesires(Class<?> type) {
+        Preconditions.notNull("type", type);
+        desireRequests.incrementAndGet();
+        return desireCache.get(type);
+    }
+
+    /**
+     * Get statistics on the cache used by {@link #getDesires(Class)}.  A load is a scan of a
+     * class's constructors, methods and fields; the reflection time saved by the cache is
+     * approximately {@code stats.hitCount() * stats.averageLoadPenalty()} nanoseconds.
+     *
+     * @return A snapshot of the desire cache statistics.
+     */
+    public static CacheStats getDesireCacheStats() {
+        long loads = desireComputations.get();
+        long failures = desireComputationFailures.get();
+        long misses = loads + failures;
+        // computations may finish before their requests are counted, don't report negative hits
+        long requests = Math.max(desireRequests.get(), misses);
+        return new CacheStats(requests - misses, misses, loads, failures,
+                              desireComputationTime.get(), 0);
+    }
+
+    /**
+     * Scan a class for its desires.  Used to populate the cache for {@link #getDesires(Class)}.
+     */
+    private static List<ReflectionDesire> computeDesires(Class<?> type) {
         List<ReflectionDesire> desires = new ArrayList<ReflectionDesire>();
 
         boolean ctorFound = false;
@@ -121,6 +121,15 @@ final class BindRuleImpl implements BindRule, Serializable {
         Preconditions.isAssignable(this.depType, this.implType);
     }
 
+    /**
+     * Get the type of dependency matched by this rule.
+     *
+     * @return The (boxed) desired type that this rule matches.
+     */
+    public Class<?> getDependencyType() {
+        return depType;
+    }
+
     /**
      * Get the rule's qualifier matcher.
      *
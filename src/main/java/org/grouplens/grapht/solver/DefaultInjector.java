@@ -18,20 +18,36 @@
  */
 package org.grouplens.grapht.solver;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.grouplens.grapht.*;
+import org.grouplens.grapht.Module;
 import org.grouplens.grapht.graph.DAGEdge;
 import org.grouplens.grapht.graph.DAGNode;
 import org.grouplens.grapht.reflect.*;
+import org.grouplens.grapht.reflect.internal.ClassSatisfaction;
+import org.grouplens.grapht.reflect.internal.ProviderClassSatisfaction;
 import org.grouplens.grapht.util.MemoizingProvider;
+import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Provider;
 import java.lang.annotation.Annotation;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <p>
@@ -40,6 +56,10 @@ import java.util.Map;
  * ordering of qualified types that satisfy each dependency. The DefaultInjector
  * uses the {@link DependencySolver} to manage dependency resolution. New
  * injectors can easily be built to also use this solver.
+ * <p>
+ * Desires that have already been resolved are served without locking: the solver publishes
+ * each new graph as an immutable snapshot, and providers are kept in a concurrent table. Only
+ * desires that are not yet in the graph take the injector's lock to run the solver.
  * 
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  */
@@ -47,9 +67,48 @@ import java.util.Map;
 public class DefaultInjector implements Injector {
     private static final Logger logger = LoggerFactory.getLogger(DefaultInjector.class);
     
+    /**
+     * Stand-in key for unqualified desires in {@link #rootProviders}.
+     */
+    private static final Object NO_QUALIFIER = new Object();
+
     private final DependencySolver solver;
-    private final Map<DAGNode<Component, Dependency>, Provider<?>> providerCache;
-    
+    private final InstantiationBackend instantiationBackend;
+    private final CachePolicy defaultPolicy;
+    private final int maxDepth;
+    private final List<BindingFunction> bindingFunctions;
+    /**
+     * The caller-owned pool to resolve dependencies in, or {@code null} to resolve sequentially.
+     */
+    @Nullable
+    private final ForkJoinPool resolutionPool;
+    /**
+     * The injector this is a child of, or {@code null} for a top-level injector.
+     */
+    @Nullable
+    private final DefaultInjector parent;
+    /**
+     * The parent's graph when this child was created.
+     */
+    @Nullable
+    private final DAGNode<Component, Dependency> sharedGraph;
+    /**
+     * The types bound by this child's own rules, or {@code null} if they are unknown.
+     */
+    @Nullable
+    private final Set<Class<?>> childRuleTypes;
+    private final ConcurrentMap<DAGNode<Component, Dependency>, Provider<?>> providerCache;
+    /**
+     * Index of providers for desires requested via {@link #getInstance(Annotation, Class)}, keyed
+     * by type and then by qualifier (or {@link #NO_QUALIFIER}).
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<Object, Provider<?>>> rootProviders;
+    /**
+     * The timings of the most recent {@link #instantiateMemoized(Executor)}, if any.
+     */
+    @Nullable
+    private volatile InitializationStats initializationStats;
+
 
     /**
      * <p>
@@ -103,6 +162,61 @@ public class DefaultInjector implements Injector {
      * @throws NullPointerException if spi or functions are null
      */
     public DefaultInjector(CachePolicy defaultPolicy, int maxDepth, BindingFunction... functions) {
+        this(defaultPolicy, maxDepth, InstantiationBackend.REFLECTION, functions);
+    }
+
+    /**
+     * <p>
+     * Create a new DefaultInjector with a particular instantiation backend.
+     *
+     * @param defaultPolicy The CachePolicy used in place of NO_PREFERENCE
+     * @param maxDepth The maximum depth of the dependency hierarchy
+     * @param backend The backend used to instantiate classes and provider classes
+     * @param functions The BindingFunctions to use, ordered with highest
+     *            priority functions first
+     * @throws IllegalArgumentException if maxDepth is less than 1, or if
+     *             defaultPolicy is NO_PREFERENCE
+     * @throws NullPointerException if backend or functions are null
+     * @see #DefaultInjector(CachePolicy, int, BindingFunction...)
+     */
+    public DefaultInjector(CachePolicy defaultPolicy, int maxDepth, InstantiationBackend backend,
+                           BindingFunction... functions) {
+        this(defaultPolicy, maxDepth, backend, null, functions);
+    }
+
+    /**
+     * <p>
+     * Create a new DefaultInjector that resolves dependencies in parallel in a fork/join pool.
+     * The pool is owned by the caller, who may share it between injectors and must shut it down
+     * when it is no longer needed; {@linkplain #createChild(Module...) child injectors} use the
+     * same pool.  The binding functions must be thread-safe.
+     *
+     * @param defaultPolicy The CachePolicy used in place of NO_PREFERENCE
+     * @param maxDepth The maximum depth of the dependency hierarchy
+     * @param backend The backend used to instantiate classes and provider classes
+     * @param pool The pool to resolve dependencies in, or {@code null} to resolve them on the
+     *             calling thread.
+     * @param functions The BindingFunctions to use, ordered with highest
+     *            priority functions first
+     * @throws IllegalArgumentException if maxDepth is less than 1, or if
+     *             defaultPolicy is NO_PREFERENCE
+     * @throws NullPointerException if backend or functions are null
+     * @see #DefaultInjector(CachePolicy, int, InstantiationBackend, BindingFunction...)
+     */
+    public DefaultInjector(CachePolicy defaultPolicy, int maxDepth, InstantiationBackend backend,
+                           @Nullable ForkJoinPool pool, BindingFunction... functions) {
+        this(defaultPolicy, maxDepth, backend, pool, Arrays.asList(functions), null, null);
+    }
+
+    /**
+     * Create an injector, possibly as the child of another.
+     */
+    private DefaultInjector(CachePolicy defaultPolicy, int maxDepth, InstantiationBackend backend,
+                            @Nullable ForkJoinPool pool,
+                            List<BindingFunction> functions,
+                            @Nullable DefaultInjector parent,
+                            @Nullable Set<Class<?>> childRuleTypes) {
+        Preconditions.notNull("backend", backend);
         if (defaultPolicy.equals(CachePolicy.NO_PREFERENCE)) {
             throw new IllegalArgumentException("Default CachePolicy cannot be NO_PREFERENCE");
         }
@@ -111,8 +225,71 @@ public class DefaultInjector implements Injector {
                                  .addBindingFunctions(functions)
                                  .setDefaultPolicy(defaultPolicy)
                                  .setMaxDepth(maxDepth)
+                                 .setForkJoinPool(pool)
                                  .build();
-        providerCache = new HashMap<DAGNode<Component, Dependency>, Provider<?>>();
+        instantiationBackend = backend;
+        this.defaultPolicy = defaultPolicy;
+        this.maxDepth = maxDepth;
+        resolutionPool = pool;
+        bindingFunctions = new ArrayList<BindingFunction>(functions);
+        this.parent = parent;
+        this.childRuleTypes = childRuleTypes;
+        if (parent != null) {
+            sharedGraph = parent.solver.getGraph();
+            solver.shareGraph(sharedGraph);
+        } else {
+            sharedGraph = null;
+        }
+        providerCache = new ConcurrentHashMap<DAGNode<Component, Dependency>, Provider<?>>();
+        rootProviders = new ConcurrentHashMap<Class<?>, ConcurrentMap<Object, Provider<?>>>();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The child's rules take precedence over this injector's rules of the same
+     * {@linkplain BindingFunctionBuilder.RuleSet rule set}, and this injector's explicit rules
+     * still take precedence over the child's generated ones, as they would if both were
+     * configured in one builder.  This injector's other binding functions come last.  The
+     * child's solver shares this injector's graph, so subtrees the child resolves the same way
+     * are merged into this injector's nodes and use this injector's providers.  Root desires
+     * whose resolution here involves none of the types the child's rules bind are not resolved
+     * again at all.
+     */
+    @Override
+    public DefaultInjector createChild(Module... modules) {
+        BindingFunctionBuilder bld = new BindingFunctionBuilder();
+        for (Module m: modules) {
+            bld.applyModule(m);
+        }
+        List<BindingFunction> functions = new ArrayList<BindingFunction>();
+        List<BindingFunction> others = new ArrayList<BindingFunction>(bindingFunctions);
+        Set<Class<?>> types = new HashSet<Class<?>>();
+        for (BindingFunctionBuilder.RuleSet set: BindingFunctionBuilder.RuleSet.values()) {
+            RuleBasedBindingFunction fn = (RuleBasedBindingFunction) bld.build(set);
+            functions.add(fn);
+            for (BindRule rule: fn.getRules().values()) {
+                if (types != null && rule instanceof BindRuleImpl) {
+                    types.add(((BindRuleImpl) rule).getDependencyType());
+                } else {
+                    // we cannot tell what this rule affects
+                    types = null;
+                }
+            }
+            // our own rules of this set follow the child's
+            Iterator<BindingFunction> iter = others.iterator();
+            while (iter.hasNext()) {
+                BindingFunction mine = iter.next();
+                if (mine instanceof RuleBasedBindingFunction
+                        && ((RuleBasedBindingFunction) mine).getRuleSet() == set) {
+                    functions.add(mine);
+                    iter.remove();
+                }
+            }
+        }
+        functions.addAll(others);
+        return new DefaultInjector(defaultPolicy, maxDepth, instantiationBackend, resolutionPool,
+                                   functions, this, types);
     }
     
     /**
@@ -130,59 +307,540 @@ public class DefaultInjector implements Injector {
     @Override
     @SuppressWarnings("unchecked")
     public <T> T getInstance(Annotation qualifier, Class<T> type) {
-        // All Provider cache access, graph resolution, etc. occur
-        // within this exclusive lock so we know everything is thread safe
-        // albeit in a non-optimal way.
-        synchronized(this) {
-            Desire desire = Desires.create(qualifier, type, false);
-
-            Predicate<Dependency> pred = Dependency.hasInitialDesire(desire);
-
-            // check if the desire is already in the graph
-            DAGEdge<Component, Dependency> resolved =
-                    solver.getGraph().getOutgoingEdgeWithLabel(pred);
-
-            // The edge is only non-null if getInstance() has been called before,
-            // it may be present in the graph at a deeper node. If that's the case
-            // it will be properly merged after regenerating the graph at the root context.
-            if (resolved == null) {
-                logger.info("Must resolve desire: {}", desire);
-                try {
-                    solver.resolve(desire);
-                } catch(SolverException e) {
-                    throw new InjectionException(type, null, e);
+        Object key = qualifier == null ? NO_QUALIFIER : qualifier;
+        // fast path: hash lookups only, no desire or predicate allocation
+        ConcurrentMap<Object, Provider<?>> byQualifier = rootProviders.get(type);
+        if (byQualifier != null) {
+            Provider<?> provider = byQualifier.get(key);
+            if (provider != null) {
+                return (T) provider.get();
+            }
+        }
+
+        // Check if the provider for the resolved node is in our cache
+        DAGNode<Component, Dependency> resolvedNode = findNode(qualifier, type);
+        Provider<?> provider = getProvider(resolvedNode);
+
+        // remember the provider so the next request for this desire is a direct lookup
+        if (byQualifier == null) {
+            byQualifier = new ConcurrentHashMap<Object, Provider<?>>();
+            ConcurrentMap<Object, Provider<?>> existing = rootProviders.putIfAbsent(type, byQualifier);
+            if (existing != null) {
+                byQualifier = existing;
+            }
+        }
+        byQualifier.putIfAbsent(key, provider);
+
+        return (T) provider.get();
+    }
+
+    /**
+     * Get an instance asynchronously.  The dependencies of the instance are constructed on the
+     * executor, with independent dependencies constructed in parallel and each component started
+     * as soon as its own dependencies are finished.  Memoized components are still constructed
+     * only once, even if several requests race to construct them.
+     * <p>
+     * The desire is resolved, if necessary, on the calling thread; only construction is
+     * asynchronous.  Components are constructed in the caller's {@link InjectionScope}, if any,
+     * so scoped components are shared with the caller's scope.
+     *
+     * @param qualifier The qualifier, or {@code null} for an unqualified instance.
+     * @param type The type of instance to get.
+     * @param executor The executor on which to construct components.
+     * @return A future for the instance.  It fails with an {@link InjectionException} if a
+     *         component cannot be constructed.
+     * @throws InjectionException if the desire cannot be resolved.
+     */
+    public <T> ListenableFuture<T> getInstanceAsync(Annotation qualifier, Class<T> type,
+                                                    Executor executor) {
+        final DAGNode<Component, Dependency> node = findNode(qualifier, type);
+        Initializer init = new Initializer(node);
+        return Futures.transform(init.start(executor), new Function<InitializationStats, T>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public T apply(InitializationStats stats) {
+                // dependencies are memoized by now, this only builds the node itself if needed
+                return (T) getProvider(node).get();
+            }
+        }, init.inScope(executor));
+    }
+
+    /**
+     * Get an unqualified instance asynchronously.
+     *
+     * @see #getInstanceAsync(Annotation, Class, Executor)
+     */
+    public <T> ListenableFuture<T> getInstanceAsync(Class<T> type, Executor executor) {
+        return getInstanceAsync(null, type, executor);
+    }
+
+    /**
+     * Find the graph node for a desired type, resolving it if necessary.
+     */
+    private DAGNode<Component, Dependency> findNode(Annotation qualifier, Class<?> type) {
+        Desire desire = Desires.create(qualifier, type, false);
+        Predicate<Dependency> pred = Dependency.hasInitialDesire(desire);
+
+        // check if the desire is already in the most recently published graph; this
+        // needs no locking since the graph is immutable
+        DAGEdge<Component, Dependency> resolved =
+                solver.getGraph().getOutgoingEdgeWithLabel(pred);
+
+        // The edge is only non-null if getInstance() has been called before,
+        // it may be present in the graph at a deeper node. If that's the case
+        // it will be properly merged after regenerating the graph at the root context.
+        if (resolved == null && parent != null) {
+            // reuse the parent's resolution if our rules cannot change it
+            DAGEdge<Component, Dependency> inherited = parent.findResolvedEdge(pred);
+            if (inherited != null && isUnaffected(inherited)) {
+                return inherited.getTail();
+            }
+        }
+        if (resolved == null) {
+            resolved = resolve(desire, pred, type);
+        }
+        return resolved.getTail();
+    }
+
+    /**
+     * Find the edge for a root desire that this injector or one of its ancestors has already
+     * resolved, without resolving anything.
+     */
+    @Nullable
+    private DAGEdge<Component, Dependency> findResolvedEdge(Predicate<Dependency> pred) {
+        DAGEdge<Component, Dependency> edge = solver.getGraph().getOutgoingEdgeWithLabel(pred);
+        if (edge == null && parent != null) {
+            edge = parent.findResolvedEdge(pred);
+            if (edge != null && !isUnaffected(edge)) {
+                edge = null;
+            }
+        }
+        return edge;
+    }
+
+    /**
+     * Check whether this child's rules could have changed the resolution of an edge inherited
+     * from the parent.  Bind rules only apply to desires of the type they bind, so the resolution
+     * is unaffected if no desire considered while resolving the subgraph has one of those types.
+     * Provider-injection cycles are always considered affected.
+     */
+    private boolean isUnaffected(DAGEdge<Component, Dependency> edge) {
+        if (childRuleTypes == null) {
+            return false;
+        }
+        if (!isUnaffected(edge.getLabel())) {
+            return false;
+        }
+        DAGNode<Component, Dependency> node = edge.getTail();
+        for (DAGEdge<Component, Dependency> back: parent.getBackEdges()) {
+            if (node.getReachableNodes().contains(back.getHead())) {
+                return false;
+            }
+        }
+        for (DAGNode<Component, Dependency> n: node.getReachableNodes()) {
+            for (DAGEdge<Component, Dependency> e: n.getOutgoingEdges()) {
+                if (!isUnaffected(e.getLabel())) {
+                    return false;
                 }
-                resolved = solver.getGraph().getOutgoingEdgeWithLabel(pred);
             }
+        }
+        return true;
+    }
 
-            // Check if the provider for the resolved node is in our cache
-            DAGNode<Component, Dependency> resolvedNode = resolved.getTail();
-            return (T) getProvider(resolvedNode).get();
+    private boolean isUnaffected(Dependency dep) {
+        for (Desire d: dep.getDesireChain()) {
+            if (childRuleTypes.contains(d.getDesiredType())) {
+                return false;
+            }
         }
+        return true;
     }
-    
+
+    /**
+     * Get the back edges of this injector and its ancestors.
+     */
+    private Set<DAGEdge<Component, Dependency>> getBackEdges() {
+        Set<DAGEdge<Component, Dependency>> edges = new HashSet<DAGEdge<Component, Dependency>>();
+        for (DefaultInjector inj = this; inj != null; inj = inj.parent) {
+            edges.addAll(inj.solver.getBackEdges());
+        }
+        return edges;
+    }
+
+    /**
+     * Query whether a node belongs to the parent's graph, so its provider should be shared.
+     */
+    private boolean isParentNode(DAGNode<Component, Dependency> node) {
+        return parent != null
+               && (sharedGraph.getReachableNodes().contains(node)
+                   || parent.solver.getGraph().getReachableNodes().contains(node)
+                   || parent.isParentNode(node));
+    }
+
+    /**
+     * Resolve a desire that was missing from the graph.  Resolution is serialized on this
+     * injector, so concurrent misses for the same desire only resolve it once.
+     */
+    private synchronized DAGEdge<Component, Dependency> resolve(Desire desire,
+                                                             Predicate<Dependency> pred,
+                                                             Class<?> type) {
+        // another thread may have resolved it while we waited for the lock
+        DAGEdge<Component, Dependency> resolved = solver.getGraph().getOutgoingEdgeWithLabel(pred);
+        if (resolved == null) {
+            logger.info("Must resolve desire: {}", desire);
+            try {
+                solver.resolve(desire);
+            } catch(SolverException e) {
+                throw new InjectionException(type, null, e);
+            }
+            resolved = solver.getGraph().getOutgoingEdgeWithLabel(pred);
+        }
+        return resolved;
+    }
+
+    /**
+     * Resolve a set of desires ahead of time, so that later requests for them do not need to
+     * run the solver.  This is useful when the entry points of an application are known when
+     * it starts; resolving them together is much cheaper than resolving them one at a time
+     * on first use.  Desires that have already been resolved are skipped.
+     *
+     * @param desires The desires to resolve.
+     * @throws SolverException if any of the desires cannot be resolved.
+     */
+    public synchronized void preResolve(Collection<? extends Desire> desires) throws SolverException {
+        DAGNode<Component, Dependency> graph = solver.getGraph();
+        List<Desire> missing = new ArrayList<Desire>();
+        for (Desire desire: desires) {
+            if (graph.getOutgoingEdgeWithLabel(Dependency.hasInitialDesire(desire)) == null) {
+                missing.add(desire);
+            }
+        }
+        solver.resolveAll(missing);
+    }
+
+    /**
+     * Resolve a set of unqualified types ahead of time.
+     *
+     * @param types The types to resolve.
+     * @throws SolverException if any of the types cannot be resolved.
+     * @see #preResolve(Collection)
+     */
+    public void preResolve(Class<?>... types) throws SolverException {
+        List<Desire> desires = new ArrayList<Desire>(types.length);
+        for (Class<?> type: types) {
+            desires.add(Desires.create(null, type, false));
+        }
+        preResolve(desires);
+    }
+
+    /**
+     * Instantiate all memoized components in the current graph, so that later requests for them
+     * do not pay for their construction.  Combined with {@link #preResolve(Collection)}, this
+     * moves the construction of an application's singletons to startup.  Components are
+     * constructed in dependency order; if an executor is given, components that do not depend on
+     * each other are constructed in parallel on it, in the caller's {@link InjectionScope} if
+     * any.
+     *
+     * @param executor The executor to construct components on, or {@code null} to construct them
+     *                 on the calling thread.
+     * @return Timings for the initialization.  They are also kept as this injector's
+     *         {@linkplain #getInitializationStats() initialization statistics}.
+     * @throws InjectionException if a component cannot be instantiated.
+     */
+    public InitializationStats instantiateMemoized(@Nullable Executor executor) {
+        Initializer init = new Initializer(solver.getGraph());
+        if (executor == null) {
+            init.runSequential();
+        } else {
+            init.runParallel(executor);
+        }
+        InitializationStats stats = init.getStats();
+        logger.info("Instantiated {}", stats);
+        initializationStats = stats;
+        return stats;
+    }
+
+    /**
+     * Get the timings of the most recent eager instantiation, such as the one done by
+     * {@link org.grouplens.grapht.InjectorBuilder#build()} for
+     * {@linkplain org.grouplens.grapht.InjectorBuilder#preInstantiate(Class[]) pre-instantiated}
+     * types.
+     *
+     * @return The statistics of the last {@link #instantiateMemoized(Executor)}, or {@code null}
+     *         if memoized components have not been eagerly instantiated.
+     */
+    @Nullable
+    public InitializationStats getInitializationStats() {
+        return initializationStats;
+    }
+
+    /**
+     * Get the provider for a node.  This does not lock; if two threads race to create the
+     * provider for the same node, only one of them is kept and used by both.
+     */
     @SuppressWarnings({ "rawtypes", "unchecked" })
     private Provider<?> getProvider(DAGNode<Component, Dependency> node) {
         Provider<?> cached = providerCache.get(node);
+        if (cached == null && isParentNode(node)) {
+            // share the parent's provider, and therefore its memoized instance
+            cached = parent.getProvider(node);
+            Provider<?> existing = providerCache.putIfAbsent(node, cached);
+            return existing == null ? cached : existing;
+        }
         if (cached == null) {
             logger.debug("Node has not been memoized, instantiating: {}", node.getLabel());
-            Provider<?> raw = node.getLabel().getSatisfaction().makeProvider(new DesireProviderMapper(node));
+            Provider<?> raw = makeProvider(node.getLabel().getSatisfaction(), new DesireProviderMapper(node));
             
             CachePolicy policy = node.getLabel().getCachePolicy();
             if (policy.equals(CachePolicy.MEMOIZE)) {
+                checkNoScopedDependencies(node);
                 // enforce memoization on providers for MEMOIZE policy
-                cached = new MemoizingProvider(raw);
+                cached = new MemoizingProvider(raw, node.getLabel().getSatisfaction().getErasedType());
+            } else if (policy.equals(CachePolicy.SCOPED)) {
+                // memoize in the current scope; unscoped policies never touch the scope
+                cached = InjectionScope.scope(raw, node.getLabel().getSatisfaction().getErasedType());
             } else {
                 // Satisfaction.makeProvider() returns providers that are expected
                 // to create new instances with each invocation
                 assert policy.equals(CachePolicy.NEW_INSTANCE);
                 cached = raw;
             }
-            providerCache.put(node, cached);
+            Provider<?> existing = providerCache.putIfAbsent(node, cached);
+            if (existing != null) {
+                // lost the race, use the winner's provider so memoization is preserved
+                cached = existing;
+            }
         }
         return cached;
     }
     
+    /**
+     * Check that a memoized node does not depend on a scoped node, since the memoized instance
+     * would capture the instance of whatever scope it was first built in.  Dependencies on
+     * injected providers are fine, and memoized dependencies are checked on their own.
+     *
+     * @throws InjectionException if the node depends on a scoped node.
+     */
+    private void checkNoScopedDependencies(DAGNode<Component, Dependency> node) {
+        Set<DAGNode<Component, Dependency>> seen = new HashSet<DAGNode<Component, Dependency>>();
+        Deque<DAGNode<Component, Dependency>> work = new ArrayDeque<DAGNode<Component, Dependency>>();
+        work.add(node);
+        while (!work.isEmpty()) {
+            for (DAGEdge<Component, Dependency> edge: work.pop().getOutgoingEdges()) {
+                DAGNode<Component, Dependency> dep = edge.getTail();
+                Component label = dep.getLabel();
+                CachePolicy policy = label.getCachePolicy();
+                if (policy.equals(CachePolicy.SCOPED)) {
+                    throw new InjectionException(node.getLabel().getSatisfaction().getErasedType(),
+                                                 null,
+                                                 "memoized component depends on scoped component "
+                                                 + label.getSatisfaction().getErasedType().getName());
+                } else if (policy.equals(CachePolicy.NEW_INSTANCE)
+                           && !label.getSatisfaction().getErasedType().equals(Provider.class)
+                           && seen.add(dep)) {
+                    work.add(dep);
+                }
+            }
+        }
+    }
+
+    /**
+     * Make a raw provider for a satisfaction, using this injector's instantiation backend
+     * for the satisfactions that support one.
+     */
+    private Provider<?> makeProvider(Satisfaction sat, ProviderSource dependencies) {
+        if (sat instanceof ClassSatisfaction) {
+            return ((ClassSatisfaction) sat).makeProvider(dependencies, instantiationBackend);
+        } else if (sat instanceof ProviderClassSatisfaction) {
+            return ((ProviderClassSatisfaction) sat).makeProvider(dependencies, instantiationBackend);
+        } else {
+            return sat.makeProvider(dependencies);
+        }
+    }
+
+    /**
+     * Instantiates the memoized nodes of a graph in dependency order.  Each node waits for the
+     * nodes it depends on, so their providers are memoized by the time it is constructed.
+     */
+    private class Initializer {
+        private final List<DAGNode<Component, Dependency>> nodes;
+        private final Map<DAGNode<Component, Dependency>, Integer> positions;
+        // the nodes that depend on each node, and the number of unfinished dependencies of each
+        private final List<List<Integer>> dependents;
+        private final int[] pending;
+        // the construction time of the longest dependency chain ending at each node
+        private final long[] pathNanos;
+        private final long startNanos;
+        private long totalNanos;
+        private long criticalPathNanos;
+        private long elapsedNanos;
+        private int count;
+        private int remaining;
+        private final SettableFuture<InitializationStats> done = SettableFuture.create();
+        // scopes are per-thread, so the creating thread's scope is carried to the executor
+        @Nullable
+        private final InjectionScope scope;
+
+        public Initializer(DAGNode<Component, Dependency> graph) {
+            startNanos = System.nanoTime();
+            scope = InjectionScope.current();
+            nodes = graph.getSortedNodes();
+            int n = nodes.size();
+            positions = Maps.newHashMapWithExpectedSize(n);
+            dependents = new ArrayList<List<Integer>>(n);
+            pending = new int[n];
+            pathNanos = new long[n];
+            for (int i = 0; i < n; i++) {
+                positions.put(nodes.get(i), i);
+                dependents.add(new ArrayList<Integer>());
+            }
+            for (int i = 0; i < n; i++) {
+                for (DAGEdge<Component, Dependency> edge: nodes.get(i).getOutgoingEdges()) {
+                    dependents.get(positions.get(edge.getTail())).add(i);
+                    pending[i] += 1;
+                }
+            }
+            remaining = n;
+        }
+
+        /**
+         * Construct the nodes one at a time; the sorted order already respects dependencies.
+         */
+        public void runSequential() {
+            for (int i = 0; i < nodes.size(); i++) {
+                long time = instantiate(i);
+                finish(i, time);
+            }
+        }
+
+        /**
+         * Construct the nodes on an executor, submitting each one as soon as its dependencies
+         * are finished, and wait for them all.
+         */
+        public void runParallel(Executor executor) {
+            try {
+                Uninterruptibles.getUninterruptibly(start(executor));
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        /**
+         * Start constructing the nodes on an executor, submitting each one as soon as its
+         * dependencies are finished.
+         * @return A future that completes when all nodes are finished, or fails with the first
+         *         construction failure.
+         */
+        public ListenableFuture<InitializationStats> start(Executor executor) {
+            List<Integer> ready = new ArrayList<Integer>();
+            for (int i = 0; i < nodes.size(); i++) {
+                if (pending[i] == 0) {
+                    ready.add(i);
+                }
+            }
+            try {
+                submit(inScope(executor), ready);
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+            return done;
+        }
+
+        private void submit(final Executor executor, List<Integer> ready) {
+            for (final int i: ready) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (done.isDone()) {
+                            // another node failed, don't bother
+                            return;
+                        }
+                        try {
+                            long time = instantiate(i);
+                            submit(executor, finish(i, time));
+                        } catch (Throwable th) {
+                            fail(th);
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Instantiate a node if it is memoized.
+         * @return The time spent constructing the node.
+         */
+        private long instantiate(int i) {
+            DAGNode<Component, Dependency> node = nodes.get(i);
+            if (!isMemoized(i)) {
+                // new-instance nodes are constructed by their dependents, if at all
+                return 0;
+            }
+            long start = System.nanoTime();
+            getProvider(node).get();
+            return System.nanoTime() - start;
+        }
+
+        /**
+         * Record that a node is finished.
+         * @return The dependents of the node that are now ready.
+         */
+        private synchronized List<Integer> finish(int i, long time) {
+            long longest = 0;
+            for (DAGEdge<Component, Dependency> edge: nodes.get(i).getOutgoingEdges()) {
+                longest = Math.max(longest, pathNanos[positions.get(edge.getTail())]);
+            }
+            pathNanos[i] = longest + time;
+            criticalPathNanos = Math.max(criticalPathNanos, pathNanos[i]);
+            totalNanos += time;
+            if (isMemoized(i)) {
+                count += 1;
+            }
+
+            List<Integer> ready = new ArrayList<Integer>();
+            for (int d: dependents.get(i)) {
+                pending[d] -= 1;
+                if (pending[d] == 0) {
+                    ready.add(d);
+                }
+            }
+            remaining -= 1;
+            if (remaining == 0) {
+                elapsedNanos = System.nanoTime() - startNanos;
+                done.set(getStats());
+            }
+            return ready;
+        }
+
+        /**
+         * Wrap an executor to run its tasks in the scope this initializer was created in.
+         */
+        public Executor inScope(final Executor executor) {
+            if (scope == null) {
+                return executor;
+            }
+            return new Executor() {
+                @Override
+                public void execute(Runnable task) {
+                    executor.execute(scope.propagate(task));
+                }
+            };
+        }
+
+        private boolean isMemoized(int i) {
+            return nodes.get(i).getLabel().getCachePolicy().equals(CachePolicy.MEMOIZE);
+        }
+
+        private void fail(Throwable th) {
+            // only the first failure is kept
+            done.setException(th);
+        }
+
+        public synchronized InitializationStats getStats() {
+            return new InitializationStats(count, totalNanos, criticalPathNanos, elapsedNanos);
+        }
+    }
+
     private class DesireProviderMapper implements ProviderSource {
         private final DAGNode<Component, Dependency> forNode;
         
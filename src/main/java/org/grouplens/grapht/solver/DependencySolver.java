@@ -19,24 +19,32 @@
 package org.grouplens.grapht.solver;
 
 import com.google.common.base.Functions;
-import com.google.common.base.Predicates;
 import com.google.common.collect.*;
 import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.context.*;
 import org.grouplens.grapht.graph.DAGEdge;
 import org.grouplens.grapht.graph.DAGNode;
 import org.grouplens.grapht.graph.DAGNodeBuilder;
 import org.grouplens.grapht.graph.MergePool;
+import org.grouplens.grapht.graph.NodeInterner;
+import org.grouplens.grapht.graph.ParentIndex;
 import org.grouplens.grapht.CachePolicy;
 import org.grouplens.grapht.Component;
 import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.InjectionPoint;
 import org.grouplens.grapht.reflect.Satisfaction;
 import org.grouplens.grapht.reflect.internal.NullSatisfaction;
 import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * <p>
@@ -53,6 +61,18 @@ import java.util.*;
  * This solver does not support cyclic dependencies because of the possibility
  * that a context later on might activate a bind rule that breaks the cycle. To
  * ensure termination, it has a maximum context depth that is configurable.
+ * <p>
+ * Within a single call to {@link #resolve(Desire)}, the solver reuses the subtree resolved for a
+ * desire when the same desire is seen again in a context that no binding function can tell apart
+ * from the first one.  This is only done when every binding function is one whose use of the
+ * context the solver understands (rule-based functions whose matchers are all
+ * {@link ContextPattern}s, and the context-free default and provider functions).
+ * <p>
+ * The solver can optionally resolve the dependencies of each component in parallel, as
+ * fork/join tasks (see {@link DependencySolverBuilder#setParallelism(int)}).  The results are
+ * combined in dependency order, so the resulting graph is the same as that built by a sequential
+ * solver.  Binding functions must be thread-safe to be used with a parallel solver; the
+ * binding functions provided with Grapht are.
  * 
  * @see DefaultInjector
  * @author <a href="http://grouplens.org">GroupLens Research</a>
@@ -83,10 +103,47 @@ public class DependencySolver {
 
     private final List<BindingFunction> functions;
     private final List<BindingFunction> triggerFunctions;
+    /**
+     * The element matchers of all context patterns used by the binding functions, or {@code null}
+     * if the binding functions may use the context in ways we cannot analyze.
+     */
+    @Nullable
+    private final List<ContextElementMatcher> contextElementMatchers;
+    /**
+     * The number of threads to resolve dependencies with, if there is no caller-supplied pool.
+     */
+    private final int parallelism;
+    /**
+     * The caller-supplied pool, or {@code null}.  The solver does not own this pool, and never
+     * shuts it down.
+     */
+    @Nullable
+    private final ForkJoinPool callerPool;
+    /**
+     * The pool used to resolve dependencies in parallel, or {@code null} to resolve sequentially.
+     * This is the caller's pool, if any; otherwise, a solver with a parallelism above 1 creates a
+     * pool for each resolution and shuts it down when the resolution finishes.
+     */
+    @Nullable
+    private ForkJoinPool forkJoinPool;
     
-    private DAGNode<Component,Dependency> graph;
-    private Set<DAGEdge<Component,Dependency>> backEdges;
+    // the graph and back edges are only replaced while holding the solver's lock, but are
+    // published together in a volatile snapshot so that injectors can navigate the current
+    // (immutable) graph without taking that lock.  A snapshot is only published once a
+    // resolution has finished, deferred nodes included.
+    private volatile Snapshot snapshot;
+    /**
+     * Parent pointers for the graph being resolved, so deferred nodes can be found and replaced
+     * without walking the whole graph.  Outside of resolution, its root is the published graph.
+     */
+    private ParentIndex<Component,Dependency> parentIndex;
     private MergePool<Component,Dependency> mergePool;
+    /**
+     * Interner for resolved nodes, so that equal subtrees resolved by separate resolutions are
+     * shared as they are built.  Deferred nodes are not interned, since they are placeholders to
+     * be replaced.
+     */
+    private final NodeInterner<Component,Dependency> nodeInterner = NodeInterner.create();
 
     /**
      * Create a DependencySolver that uses the given functions, and max
@@ -101,22 +158,102 @@ public class DependencySolver {
     DependencySolver(List<BindingFunction> bindFunctions,
                      List<BindingFunction> triggers,
                      CachePolicy defaultPolicy, int maxDepth) {
+        this(bindFunctions, triggers, defaultPolicy, maxDepth, 1);
+    }
+
+    /**
+     * Create a DependencySolver that may resolve dependencies in parallel.
+     *
+     * @param parallelism The number of threads to use for resolving dependencies.  If 1, the
+     *                    solver resolves dependencies sequentially on the calling thread;
+     *                    otherwise, each resolution runs in a pool of this many threads that is
+     *                    shut down when it finishes.
+     * @throws IllegalArgumentException if maxDepth or parallelism is less than 1
+     * @see #DependencySolver(List, List, CachePolicy, int)
+     */
+    DependencySolver(List<BindingFunction> bindFunctions,
+                     List<BindingFunction> triggers,
+                     CachePolicy defaultPolicy, int maxDepth, int parallelism) {
+        this(bindFunctions, triggers, defaultPolicy, maxDepth, parallelism, null);
+    }
+
+    /**
+     * Create a DependencySolver that resolves dependencies in a caller-supplied pool.
+     *
+     * @param pool The pool to resolve dependencies in, or {@code null} to resolve them
+     *             sequentially on the calling thread.  The caller remains responsible for
+     *             shutting it down.
+     * @throws IllegalArgumentException if maxDepth is less than 1
+     * @see #DependencySolver(List, List, CachePolicy, int)
+     */
+    DependencySolver(List<BindingFunction> bindFunctions,
+                     List<BindingFunction> triggers,
+                     CachePolicy defaultPolicy, int maxDepth, @Nullable ForkJoinPool pool) {
+        this(bindFunctions, triggers, defaultPolicy, maxDepth, 1, pool);
+    }
+
+    private DependencySolver(List<BindingFunction> bindFunctions,
+                             List<BindingFunction> triggers,
+                             CachePolicy defaultPolicy, int maxDepth,
+                             int parallelism, @Nullable ForkJoinPool pool) {
         Preconditions.notNull("bindFunctions", bindFunctions);
         Preconditions.notNull("defaultPolicy", defaultPolicy);
         if (maxDepth <= 0) {
             throw new IllegalArgumentException("Max depth must be at least 1");
         }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
         
         this.functions = new ArrayList<BindingFunction>(bindFunctions);
         this.triggerFunctions = new ArrayList<BindingFunction>(triggers);
         this.maxDepth = maxDepth;
         this.defaultPolicy = defaultPolicy;
+        contextElementMatchers = findContextElementMatchers(functions);
+        this.parallelism = parallelism;
+        callerPool = pool;
+        forkJoinPool = pool;
         
-        graph = DAGNode.singleton(ROOT_SATISFACTION);
-        backEdges = Sets.newHashSet();
+        snapshot = new Snapshot(DAGNode.<Component,Dependency>singleton(ROOT_SATISFACTION),
+                                ImmutableMap.<Pair<DAGNode<Component,Dependency>,Desire>,
+                                             DAGEdge<Component,Dependency>>of());
+        parentIndex = ParentIndex.create(snapshot.graph);
         mergePool = MergePool.create();
 
-        logger.info("DependencySolver created, max depth: {}", maxDepth);
+        logger.info("DependencySolver created, max depth: {}, parallelism: {}", maxDepth,
+                    pool == null ? parallelism : pool.getParallelism());
+    }
+
+    /**
+     * Find the context element matchers that determine how a list of binding functions
+     * responds to injection contexts.
+     *
+     * @param functions The binding functions.
+     * @return The distinct element matchers used by the functions' context patterns, or
+     *         {@code null} if some function may depend on the context in other ways.
+     */
+    @Nullable
+    private static List<ContextElementMatcher> findContextElementMatchers(List<BindingFunction> functions) {
+        Set<ContextElementMatcher> matchers = Sets.newLinkedHashSet();
+        for (BindingFunction fn: functions) {
+            // exact class checks, since subclasses may override bind() to look at the context
+            if (fn.getClass().equals(RuleBasedBindingFunction.class)) {
+                for (ContextMatcher cm: ((RuleBasedBindingFunction) fn).getRules().keySet()) {
+                    if (!(cm instanceof ContextPattern)) {
+                        return null;
+                    }
+                    for (ContextPattern.Element elem: ((ContextPattern) cm).getElements()) {
+                        matchers.add(elem.getMatcher());
+                    }
+                }
+            } else if (!fn.getClass().equals(DefaultDesireBindingFunction.class)
+                       && !fn.getClass().equals(ProviderBindingFunction.class)) {
+                return null;
+            }
+        }
+        // the wildcard matches every element the same way, so it cannot distinguish contexts
+        matchers.remove(ContextElements.matchAny());
+        return ImmutableList.copyOf(matchers);
     }
 
     /**
@@ -131,10 +268,24 @@ public class DependencySolver {
     /**
      * Get the current full dependency graph. This consists of a synthetic root node with edges
      * to the resolutions of all dependencies passed to {@link #resolve(Desire)}.
+     * <p>This method does not lock the solver; it returns the most recently published graph,
+     * which is immutable and therefore safe to navigate while resolution continues.</p>
      * @return The resolved dependency graph.
      */
     public DAGNode<Component, Dependency> getGraph() {
-        return graph;
+        return snapshot.graph;
+    }
+
+    /**
+     * Share the nodes of another graph with this solver.  Subtrees this solver resolves that are
+     * equal to subtrees of the shared graph are merged into the shared graph's nodes, so the
+     * shared nodes (and anything keyed by them, such as an injector's providers) are reused.
+     * This does not add anything to this solver's own graph.
+     *
+     * @param shared The graph whose nodes should be reused.
+     */
+    synchronized void shareGraph(DAGNode<Component, Dependency> shared) {
+        mergePool.merge(shared);
     }
 
     /**
@@ -145,22 +296,28 @@ public class DependencySolver {
      * @return A snapshot of the map of back-edges.
      */
     public ImmutableSet<DAGEdge<Component, Dependency>> getBackEdges() {
-        return ImmutableSet.copyOf(backEdges);
+        return ImmutableSet.copyOf(snapshot.backEdges.values());
     }
 
     /**
-     * Get the back edge for a particular node and desire, if one exists.
+     * Get the back edge for a particular node and desire, if one exists.  This does not lock
+     * the solver; it consults the most recently published back edges.
      * @return The back edge, or {@code null} if no edge exists.
      * @see #getBackEdges()
      */
-    public synchronized DAGNode<Component, Dependency> getBackEdge(DAGNode<Component, Dependency> parent,
-                                                                            Desire desire) {
-        return FluentIterable.from(backEdges)
-                             .filter(DAGEdge.headMatches(Predicates.equalTo(parent)))
-                             .filter(DAGEdge.labelMatches(Dependency.hasInitialDesire(desire)))
-                             .first()
-                             .transform(DAGEdge.<Component, Dependency>extractTail())
-                             .orNull();
+    public DAGNode<Component, Dependency> getBackEdge(DAGNode<Component, Dependency> parent,
+                                                      Desire desire) {
+        DAGEdge<Component, Dependency> edge = snapshot.backEdges.get(Pair.of(parent, desire));
+        return edge == null ? null : edge.getTail();
+    }
+
+    /**
+     * Add a back edge to a back edge table, indexed by head node and initial desire.
+     */
+    private static void addBackEdge(Map<Pair<DAGNode<Component,Dependency>,Desire>,
+                                        DAGEdge<Component,Dependency>> backEdges,
+                                    DAGEdge<Component,Dependency> edge) {
+        backEdges.put(Pair.of(edge.getHead(), edge.getLabel().getInitialDesire()), edge);
     }
 
     /**
@@ -169,7 +326,7 @@ public class DependencySolver {
      */
     @Deprecated
     public DAGNode<Component, Dependency> getRootNode() {
-        return graph;
+        return snapshot.graph;
     }
     
     /**
@@ -180,29 +337,102 @@ public class DependencySolver {
      * @param desire The desire to include in the graph
      */
     public synchronized void resolve(Desire desire) throws SolverException {
-        logger.info("Resolving desire: {}", desire);
+        resolveAll(Collections.singletonList(desire));
+    }
+
+    /**
+     * Update the dependency graph to include all of the given desires.  This is equivalent to
+     * calling {@link #resolve(Desire)} for each desire in turn, but the root node is only rebuilt
+     * once and subtrees are shared between the desires while they are being resolved, so it is
+     * considerably cheaper when many root desires are known up front.
+     * <p>
+     * The new graph is published to {@link #getGraph()} once all the desires and their deferred
+     * dependencies are resolved; if resolution fails, the graph is left unchanged.
+     *
+     * @param desires The desires to include in the graph.
+     * @throws SolverException if any of the desires cannot be resolved.
+     */
+    public synchronized void resolveAll(Collection<? extends Desire> desires) throws SolverException {
+        if (desires.isEmpty()) {
+            return;
+        }
+        logger.info("Resolving {} desires", desires.size());
 
-        Queue<Deferral> deferralQueue = new ArrayDeque<Deferral>();
+        Deque<Deferral> deferralQueue = new ArrayDeque<Deferral>();
+        SubtreeCache cache = null;
+        if (contextElementMatchers != null) {
+            cache = new SubtreeCache(contextElementMatchers);
+        }
 
         // before any deferred nodes are processed, we use a synthetic root
         // and null original desire since nothing produced this root
         deferralQueue.add(new Deferral(rootNode(), initialContext()));
 
+        // the graph is built up in the parent index and the back edges in a local table, and
+        // both are only published when they are complete
+        Snapshot current = snapshot;
+        Map<Pair<DAGNode<Component,Dependency>,Desire>, DAGEdge<Component,Dependency>> backEdges =
+                Maps.newLinkedHashMap(current.backEdges);
+        boolean ownPool = callerPool == null && parallelism > 1;
+        if (ownPool) {
+            forkJoinPool = new ForkJoinPool(parallelism);
+        }
+        boolean finished = false;
+        try {
+            processDeferrals(desires, deferralQueue, cache, backEdges);
+            finished = true;
+        } finally {
+            if (ownPool) {
+                forkJoinPool.shutdown();
+                forkJoinPool = null;
+            }
+            if (finished) {
+                snapshot = new Snapshot(parentIndex.getRoot(), ImmutableMap.copyOf(backEdges));
+            } else {
+                // forget the partial graph
+                parentIndex = ParentIndex.create(current.graph);
+            }
+        }
+    }
+
+    /**
+     * Process queued deferrals until the queue is empty, updating the parent index and the
+     * table of back edges.
+     */
+    private void processDeferrals(Collection<? extends Desire> desires,
+                                  Deque<Deferral> deferralQueue,
+                                  SubtreeCache cache,
+                                  Map<Pair<DAGNode<Component,Dependency>,Desire>,
+                                      DAGEdge<Component,Dependency>> backEdges) throws SolverException {
+        Set<CacheEntry> replayed = Collections.newSetFromMap(new IdentityHashMap<CacheEntry, Boolean>());
         while(!deferralQueue.isEmpty()) {
             Deferral current = deferralQueue.poll();
+            if (current.entry != null) {
+                // the deferrals of a cached subtree go where its first use would have put them
+                if (replayed.add(current.entry)) {
+                    Iterator<Deferral> iter = current.entry.deferrals.descendingIterator();
+                    while (iter.hasNext()) {
+                        deferralQueue.addFirst(iter.next());
+                    }
+                }
+                continue;
+            }
             DAGNode<Component, Dependency> parent = current.node;
             // deferred nodes are either root - depless - or having deferred dependencies
             assert parent.getOutgoingEdges().isEmpty();
 
             if (current.node.getLabel().equals(ROOT_SATISFACTION)) {
-                Pair<DAGNode<Component, Dependency>, Dependency> rootNode =
-                        resolveFully(desire, current.context, deferralQueue);
-                // add this to the global graph
-                graph = DAGNode.copyBuilder(graph)
-                               .addEdge(mergePool.merge(rootNode.getLeft()),
-                                        rootNode.getRight())
-                               .build();
-            } else if (graph.getReachableNodes().contains(parent)) {
+                // resolve all the desires before touching the global graph
+                List<Pair<DAGNode<Component, Dependency>, Dependency>> rootNodes =
+                        resolveEach(desires, current.context, deferralQueue, cache);
+                // add them to the global graph
+                DAGNodeBuilder<Component, Dependency> bld =
+                        DAGNode.copyBuilder(parentIndex.getRoot());
+                for (Pair<DAGNode<Component, Dependency>, Dependency> rootNode: rootNodes) {
+                    bld.addEdge(mergePool.merge(rootNode.getLeft()), rootNode.getRight());
+                }
+                parentIndex.setRoot(bld.build());
+            } else if (parentIndex.contains(parent)) {
                 // the node needs to be re-scanned.  This means that it was not consolidated by
                 // a previous merge operation.  This branch only arises with provider injection.
                 Satisfaction sat = parent.getLabel().getSatisfaction();
@@ -210,23 +440,26 @@ public class DependencySolver {
                     logger.debug("Attempting to resolve deferred dependency {} of {}", d, sat);
                     // resolve the dependency
                     Pair<DAGNode<Component, Dependency>, Dependency> result =
-                            resolveFully(d, current.context, deferralQueue);
+                            resolveEach(Collections.singletonList(d), current.context,
+                                        deferralQueue, cache).get(0);
                     // merge it in
                     DAGNode<Component, Dependency> merged = mergePool.merge(result.getLeft());
                     // now see if there's a real cycle
                     if (merged.getReachableNodes().contains(parent)) {
                         // parent node is referenced from merged, we have a circle!
                         // that means we need a back edge
-                        backEdges.add(DAGEdge.create(parent, merged, result.getRight()));
+                        DAGEdge<Component, Dependency> backEdge =
+                                DAGEdge.create(parent, merged, result.getRight());
+                        addBackEdge(backEdges, backEdge);
                     } else {
                         // an edge from parent to merged does not add a cycle
-                        // we have to update graph right away so it's available to merge the next
+                        // we have to update the graph right away so it's available to merge the next
                         // dependency
                         DAGNode<Component, Dependency> newP =
                                 DAGNode.copyBuilder(parent)
                                        .addEdge(merged, result.getRight())
                                        .build();
-                        replaceNode(parent, newP);
+                        replaceNode(parent, newP, backEdges);
                         parent = newP;
                     }
                 }
@@ -238,12 +471,27 @@ public class DependencySolver {
     }
 
     private void replaceNode(DAGNode<Component,Dependency> old,
-                             DAGNode<Component,Dependency> repl) {
+                             DAGNode<Component,Dependency> repl,
+                             Map<Pair<DAGNode<Component,Dependency>,Desire>,
+                                 DAGEdge<Component,Dependency>> backEdges) {
         Map<DAGNode<Component,Dependency>,
                 DAGNode<Component,Dependency>> memory = Maps.newHashMap();
-        graph = graph.replaceNode(old, repl, memory);
-        // loop over a snapshot of the list, replacing nodes
-        backEdges = Sets.newHashSet(Iterables.transform(backEdges, DAGEdge.transformNodes(Functions.forMap(memory, null))));
+        // only the ancestors of the old node are copied
+        parentIndex.replaceNode(old, repl, memory);
+        // rewrite the back edges only if some of them refer to replaced nodes
+        for (DAGEdge<Component,Dependency> edge: backEdges.values()) {
+            if (memory.containsKey(edge.getHead()) || memory.containsKey(edge.getTail())) {
+                List<DAGEdge<Component,Dependency>> edges =
+                        Lists.newArrayList(Iterables.transform(
+                                backEdges.values(),
+                                DAGEdge.transformNodes(Functions.forMap(memory, null))));
+                backEdges.clear();
+                for (DAGEdge<Component,Dependency> e: edges) {
+                    addBackEdge(backEdges, e);
+                }
+                break;
+            }
+        }
     }
 
     /**
@@ -304,7 +552,7 @@ public class DependencySolver {
                     if (result != null) {
                         // resolve the node
                         // we could reuse the resolution, but perf savings isn't worth complexity
-                        repl = resolveFully(desire, context, null);
+                        repl = resolveFully(desire, context, null, null);
                         break;
                     }
                 }
@@ -337,15 +585,63 @@ public class DependencySolver {
      * @param desire The desire to resolve.
      * @param context The context of {@code parent}.
      * @param deferQueue The queue of node deferrals.
+     * @param cache The cache of resolved subtrees, or {@code null} to resolve without caching.
      * @throws SolverException if there is an error resolving the nodes.
      */
     private Pair<DAGNode<Component,Dependency>,Dependency>
-    resolveFully(Desire desire, InjectionContext context, Queue<Deferral> deferQueue) throws SolverException {
+    resolveFully(Desire desire, InjectionContext context, Queue<Deferral> deferQueue,
+                 @Nullable SubtreeCache cache) throws SolverException {
         // check context depth against max to detect likely dependency cycles
         if (context.size() > maxDepth) {
             throw new CyclicDependencyException(desire, "Maximum context depth of " + maxDepth + " was reached");
         }
-        
+
+        if (cache == null) {
+            return resolveUncached(desire, context, deferQueue, cache);
+        }
+        Pair<Desire, ContextKey> cacheKey = Pair.of(desire, cache.getContextKey(context));
+        if (forkJoinPool == null) {
+            Pair<DAGNode<Component, Dependency>, Dependency> cached = cache.getResult(cacheKey);
+            if (cached != null) {
+                logger.debug("Reusing resolved subtree for {}", desire);
+                return cached;
+            }
+            Pair<DAGNode<Component, Dependency>, Dependency> resolved =
+                    resolveUncached(desire, context, deferQueue, cache);
+            cache.putResult(cacheKey, resolved);
+            return resolved;
+        }
+
+        // in parallel, each subtree is resolved once, by whichever task gets to it first; its
+        // deferrals are kept with it, and replayed where the sequential solver would add them
+        CacheEntry entry = new CacheEntry();
+        CacheEntry existing = cache.claim(cacheKey, entry);
+        if (existing == null) {
+            try {
+                entry.finish(resolveUncached(desire, context, entry.deferrals, cache));
+            } catch (SolverException e) {
+                entry.fail(e);
+                throw e;
+            } finally {
+                // don't leave other tasks waiting if resolution failed unexpectedly
+                entry.fail(new SolverException("failed to resolve " + desire));
+            }
+        } else {
+            logger.debug("Reusing resolved subtree for {}", desire);
+            entry = existing;
+        }
+        deferQueue.add(new Deferral(entry));
+        return entry.await();
+    }
+
+    /**
+     * Resolve a desire and its dependencies without consulting the cache for the desire itself.
+     *
+     * @see #resolveFully(Desire, InjectionContext, Queue, SubtreeCache)
+     */
+    private Pair<DAGNode<Component,Dependency>,Dependency>
+    resolveUncached(Desire desire, InjectionContext context, Queue<Deferral> deferQueue,
+                    @Nullable SubtreeCache cache) throws SolverException {
         // resolve the current node
         Resolution result = resolve(desire, context);
 
@@ -359,21 +655,74 @@ public class DependencySolver {
             deferQueue.add(new Deferral(node, newContext));
         } else {
             // build up a node with its outgoing edges
-            DAGNodeBuilder<Component,Dependency> nodeBuilder = DAGNode.newBuilder();
+            DAGNodeBuilder<Component,Dependency> nodeBuilder = nodeInterner.newBuilder();
             nodeBuilder.setLabel(result.makeSatisfaction());
-            for (Desire d: result.satisfaction.getDependencies()) {
-                // complete the sub graph for the given desire
-                // - the call to resolveFully() is responsible for adding the dependency edges
-                //   so we don't need to process the returned node
-                logger.debug("Attempting to satisfy dependency {} of {}", d, result.satisfaction);
-                nodeBuilder.addEdge(resolveFully(d, newContext, deferQueue));
+            List<? extends Desire> deps = result.satisfaction.getDependencies();
+            if (forkJoinPool != null && deps.size() > 1) {
+                logger.debug("Satisfying {} dependencies of {} in parallel", deps.size(), result.satisfaction);
+                for (Pair<DAGNode<Component, Dependency>, Dependency> edge:
+                        resolveEach(deps, newContext, deferQueue, cache)) {
+                    nodeBuilder.addEdge(edge);
+                }
+            } else {
+                for (Desire d: deps) {
+                    // complete the sub graph for the given desire
+                    // - the call to resolveFully() is responsible for adding the dependency edges
+                    //   so we don't need to process the returned node
+                    logger.debug("Attempting to satisfy dependency {} of {}", d, result.satisfaction);
+                    nodeBuilder.addEdge(resolveFully(d, newContext, deferQueue, cache));
+                }
             }
             node = nodeBuilder.build();
         }
 
         return Pair.of(node, result.makeDependency());
     }
-    
+
+    /**
+     * Fully resolve several desires in the same context.  With a parallel solver, the desires are
+     * resolved as fork/join tasks; the results are returned, and the deferrals added to the
+     * queue, in the order of the desires, just as if they had been resolved sequentially.
+     *
+     * @param desires The desires to resolve.
+     * @param context The context in which to resolve them.
+     * @param deferQueue The queue of node deferrals.
+     * @param cache The cache of resolved subtrees, or {@code null} to resolve without caching.
+     * @return The resolved nodes and dependencies, in the same order as {@code desires}.
+     * @throws SolverException if there is an error resolving the desires.  If several desires
+     *                         fail, the error for the first of them is thrown.
+     */
+    private List<Pair<DAGNode<Component, Dependency>, Dependency>>
+    resolveEach(Collection<? extends Desire> desires, InjectionContext context,
+                Queue<Deferral> deferQueue, @Nullable SubtreeCache cache) throws SolverException {
+        List<Pair<DAGNode<Component, Dependency>, Dependency>> results =
+                Lists.newArrayListWithCapacity(desires.size());
+        if (forkJoinPool == null) {
+            for (Desire desire: desires) {
+                results.add(resolveFully(desire, context, deferQueue, cache));
+            }
+            return results;
+        }
+
+        List<ResolveTask> tasks = Lists.newArrayListWithCapacity(desires.size());
+        for (Desire desire: desires) {
+            tasks.add(new ResolveTask(desire, context, cache));
+        }
+        if (ForkJoinTask.getPool() == forkJoinPool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            forkJoinPool.invoke(new ResolveAllTask(tasks));
+        }
+        for (ResolveTask task: tasks) {
+            if (task.error != null) {
+                throw task.error;
+            }
+            deferQueue.addAll(task.deferrals);
+            results.add(task.result);
+        }
+        return results;
+    }
+
     private Resolution resolve(Desire desire, InjectionContext context) throws SolverException {
         DesireChain chain = DesireChain.singleton(desire);
 
@@ -464,17 +813,260 @@ public class DependencySolver {
         }
     }
     
+    /*
+     * Fork/join task to fully resolve a desire.  Errors are kept rather than thrown, so the
+     * caller can report them in dependency order.
+     */
+    private class ResolveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Desire desire;
+        private final InjectionContext context;
+        @Nullable
+        private final SubtreeCache cache;
+        private final Queue<Deferral> deferrals = new ArrayDeque<Deferral>();
+        private Pair<DAGNode<Component, Dependency>, Dependency> result;
+        private SolverException error;
+
+        public ResolveTask(Desire desire, InjectionContext context, @Nullable SubtreeCache cache) {
+            this.desire = desire;
+            this.context = context;
+            this.cache = cache;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                result = resolveFully(desire, context, deferrals, cache);
+            } catch (SolverException e) {
+                error = e;
+            }
+        }
+    }
+
+    /*
+     * Fork/join task to run a list of resolve tasks, for starting them from outside the pool.
+     */
+    private static class ResolveAllTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<ResolveTask> tasks;
+
+        public ResolveAllTask(List<ResolveTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+    }
+
+    /*
+     * Cache of subtrees resolved within one resolution.  It must not outlive the resolution,
+     * because deferred nodes in cached subtrees are only processed by that resolution's queue.
+     */
+    private static class SubtreeCache {
+        private final List<ContextElementMatcher> matchers;
+        private final Map<InjectionContext, ContextKey> contextKeys =
+                new IdentityHashMap<InjectionContext, ContextKey>();
+        private final Map<Pair<Desire, ContextKey>, Pair<DAGNode<Component, Dependency>, Dependency>> results =
+                new HashMap<Pair<Desire, ContextKey>, Pair<DAGNode<Component, Dependency>, Dependency>>();
+        private final Map<Pair<Desire, ContextKey>, CacheEntry> entries =
+                new HashMap<Pair<Desire, ContextKey>, CacheEntry>();
+
+        public SubtreeCache(List<ContextElementMatcher> matchers) {
+            this.matchers = matchers;
+        }
+
+        public synchronized Pair<DAGNode<Component, Dependency>, Dependency> getResult(Pair<Desire, ContextKey> key) {
+            return results.get(key);
+        }
+
+        /**
+         * Claim a subtree for resolution by a parallel task.
+         * @param key The subtree's key.
+         * @param entry The entry the task will complete.
+         * @return The entry of the task that already claimed the subtree, or {@code null} if the
+         *         subtree is now claimed with {@code entry}.
+         */
+        @Nullable
+        public synchronized CacheEntry claim(Pair<Desire, ContextKey> key, CacheEntry entry) {
+            CacheEntry existing = entries.get(key);
+            if (existing == null) {
+                entries.put(key, entry);
+            }
+            return existing;
+        }
+
+        public synchronized void putResult(Pair<Desire, ContextKey> key,
+                                           Pair<DAGNode<Component, Dependency>, Dependency> result) {
+            results.put(key, result);
+        }
+
+        /**
+         * Get the key of a context.  Contexts are extended one element at a time during
+         * resolution, so this only has to match the last element against the matchers.
+         */
+        public synchronized ContextKey getContextKey(InjectionContext context) {
+            ContextKey key = contextKeys.get(context);
+            if (key == null) {
+                InjectionContext leading = context.getLeading();
+                ContextKey prev = leading == null ? null : getContextKey(leading);
+                Pair<Satisfaction, InjectionPoint> elem = context.getTailValue();
+                MatchElement[] matches = new MatchElement[matchers.size()];
+                for (int i = 0; i < matches.length; i++) {
+                    matches[i] = matchers.get(i).apply(elem);
+                }
+                key = new ContextKey(prev, matches);
+                contextKeys.put(context, key);
+            }
+            return key;
+        }
+    }
+
+    /*
+     * A subtree being resolved by a parallel task, with the deferrals its resolution produced.
+     * Other tasks needing the subtree wait for it, blocking in a way the pool can compensate for.
+     */
+    private static class CacheEntry implements ForkJoinPool.ManagedBlocker {
+        private final Deque<Deferral> deferrals = new ArrayDeque<Deferral>();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Pair<DAGNode<Component, Dependency>, Dependency> result;
+        private SolverException error;
+
+        public void finish(Pair<DAGNode<Component, Dependency>, Dependency> res) {
+            result = res;
+            done.countDown();
+        }
+
+        /**
+         * Fail the resolution, unless it is already complete.
+         */
+        public synchronized void fail(SolverException e) {
+            if (done.getCount() > 0) {
+                error = e;
+                done.countDown();
+            }
+        }
+
+        /**
+         * Wait for the subtree to be resolved.
+         * @return The resolved subtree.
+         * @throws SolverException if the subtree could not be resolved.
+         */
+        public Pair<DAGNode<Component, Dependency>, Dependency> await() throws SolverException {
+            boolean interrupted = false;
+            while (!isReleasable()) {
+                try {
+                    ForkJoinPool.managedBlock(this);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            done.await();
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return done.getCount() == 0;
+        }
+    }
+
+    /*
+     * The part of an injection context visible to context patterns: for each element of the
+     * context, the results of matching it against every element matcher.  Contexts with equal
+     * keys are matched identically by every pattern built from those element matchers.
+     */
+    private static class ContextKey {
+        @Nullable
+        private final ContextKey previous;
+        private final MatchElement[] matches;
+        private final int size;
+        private final int hashCode;
+
+        public ContextKey(@Nullable ContextKey prev, MatchElement[] ms) {
+            previous = prev;
+            matches = ms;
+            size = prev == null ? 1 : prev.size + 1;
+            hashCode = 31 * (prev == null ? 0 : prev.hashCode) + Arrays.hashCode(ms);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ContextKey)) {
+                return false;
+            }
+            ContextKey a = this;
+            ContextKey b = (ContextKey) o;
+            if (a.size != b.size || a.hashCode != b.hashCode) {
+                return false;
+            }
+            while (a != null && a != b) {
+                if (!Arrays.equals(a.matches, b.matches)) {
+                    return false;
+                }
+                a = a.previous;
+                b = b.previous;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+    
+    /*
+     * A published graph and its back edges
+     */
+    private static class Snapshot {
+        private final DAGNode<Component, Dependency> graph;
+        private final ImmutableMap<Pair<DAGNode<Component,Dependency>,Desire>,
+                                   DAGEdge<Component,Dependency>> backEdges;
+
+        public Snapshot(DAGNode<Component, Dependency> graph,
+                        ImmutableMap<Pair<DAGNode<Component,Dependency>,Desire>,
+                                     DAGEdge<Component,Dependency>> backEdges) {
+            this.graph = graph;
+            this.backEdges = backEdges;
+        }
+    }
+
     /*
      * Deferred results tuple
      */
     private static class Deferral {
         private final DAGNode<Component, Dependency> node;
         private final InjectionContext context;
+        // for a replay of a cached subtree's deferrals, the subtree's entry
+        @Nullable
+        private final CacheEntry entry;
 
         public Deferral(DAGNode<Component, Dependency> node,
                         InjectionContext context) {
             this.node = node;
             this.context = context;
+            entry = null;
+        }
+
+        public Deferral(CacheEntry entry) {
+            node = null;
+            context = null;
+            this.entry = entry;
         }
     }
 }
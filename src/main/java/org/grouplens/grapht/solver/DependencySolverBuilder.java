@@ -22,10 +22,12 @@ import org.grouplens.grapht.CachePolicy;
 import org.grouplens.grapht.util.Preconditions;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A builder for {@link DependencySolver}s.
@@ -39,6 +41,8 @@ public class DependencySolverBuilder {
     private List<BindingFunction> triggerFunctions = new LinkedList<BindingFunction>();
     private CachePolicy defaultPolicy = CachePolicy.NO_PREFERENCE;
     private int maxDepth = 100;
+    private int parallelism = 1;
+    private ForkJoinPool forkJoinPool;
 
     /**
      * Get the current list of binding functions.
@@ -151,11 +155,64 @@ public class DependencySolverBuilder {
         return this;
     }
 
+    /**
+     * Get the parallelism.
+     * @return The number of threads the solver will use to resolve dependencies.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of threads the solver uses to resolve dependencies.  The default is 1,
+     * which resolves dependencies sequentially on the thread calling the solver.  With higher
+     * values, the solver resolves the dependencies of each component as fork/join tasks in a
+     * pool of this many threads, producing the same graph as a sequential solver; all binding
+     * functions must be thread-safe.
+     * @param threads The number of threads to use.
+     * @return The builder (for chaining).
+     */
+    public DependencySolverBuilder setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        parallelism = threads;
+        return this;
+    }
+
+    /**
+     * Get the fork/join pool.
+     * @return The pool the solver will resolve dependencies in, or {@code null} if it uses the
+     *         {@linkplain #getParallelism() parallelism} instead.
+     */
+    @Nullable
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Set the pool the solver resolves dependencies in.  The pool is owned by the caller, who
+     * can share it between solvers and must shut it down when it is no longer needed.  If set,
+     * the pool takes precedence over the {@linkplain #setParallelism(int) parallelism}; by
+     * default, a solver with a parallelism above 1 starts a pool for each resolution and shuts
+     * it down afterwards, so callers resolving repeatedly should supply a pool.
+     * @param pool The pool to use, or {@code null} to use the parallelism.
+     * @return The builder (for chaining).
+     */
+    public DependencySolverBuilder setForkJoinPool(@Nullable ForkJoinPool pool) {
+        forkJoinPool = pool;
+        return this;
+    }
+
     /**
      * Build a dependency solver.
      * @return The dependency solver.
      */
     public DependencySolver build() {
-        return new DependencySolver(bindingFunctions, triggerFunctions, defaultPolicy, maxDepth);
+        if (forkJoinPool != null) {
+            return new DependencySolver(bindingFunctions, triggerFunctions, defaultPolicy, maxDepth,
+                                        forkJoinPool);
+        }
+        return new DependencySolver(bindingFunctions, triggerFunctions, defaultPolicy, maxDepth, parallelism);
     }
 }
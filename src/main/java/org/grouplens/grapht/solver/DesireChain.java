@@ -25,7 +25,9 @@ import org.grouplens.grapht.util.AbstractChain;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -44,6 +46,12 @@ public class DesireChain extends AbstractChain<Desire> {
     @Nonnull
     private final Desire initialDesire;
     private final UUID key;
+    /**
+     * The bind rules applied while building this chain, shared by all chains extended from the
+     * same singleton.  A chain is only built up by the thread resolving its initial desire, so
+     * this needs no locking.
+     */
+    private transient Set<BindRule> appliedRules;
 
     public static DesireChain singleton(Desire desire) {
         return new DesireChain(null, desire);
@@ -57,6 +65,7 @@ public class DesireChain extends AbstractChain<Desire> {
     private DesireChain(DesireChain prev, @Nonnull Desire d) {
         super(prev, d);
         key = prev == null ? UUID.randomUUID() : prev.key;
+        appliedRules = prev == null ? new HashSet<BindRule>() : prev.getAppliedRules();
         initialDesire = prev == null ? d : prev.getInitialDesire();
     }
 
@@ -103,6 +112,19 @@ public class DesireChain extends AbstractChain<Desire> {
         return key;
     }
 
+    /**
+     * Get the bind rules that have been applied while building this chain, so that
+     * {@link RuleBasedBindingFunction} does not apply a rule twice to the same chain.
+     * @return The (mutable) set of applied rules.
+     */
+    Set<BindRule> getAppliedRules() {
+        if (appliedRules == null) {
+            // deserialized chain
+            appliedRules = new HashSet<BindRule>();
+        }
+        return appliedRules;
+    }
+
     /**
      * Extend this chain with a new desire. The chain is not modified; this method returns a new
      * chain that includes the new desire as its current desire.
@@ -0,0 +1,89 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings for the eager instantiation of an injector's memoized components.  The <em>total</em>
+ * time is the sum of the construction times of all components, which is how long a sequential
+ * initialization would take.  The <em>critical path</em> time is the longest chain of dependent
+ * constructions, which bounds how fast a parallel initialization can be.
+ *
+ * @see DefaultInjector#instantiateMemoized(java.util.concurrent.Executor)
+ * @since 0.9
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public class InitializationStats {
+    private final int componentCount;
+    private final long totalNanos;
+    private final long criticalPathNanos;
+    private final long elapsedNanos;
+
+    InitializationStats(int count, long total, long criticalPath, long elapsed) {
+        componentCount = count;
+        totalNanos = total;
+        criticalPathNanos = criticalPath;
+        elapsedNanos = elapsed;
+    }
+
+    /**
+     * Get the number of components that were instantiated.
+     * @return The number of memoized components instantiated.
+     */
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Get the total time spent constructing components.
+     * @param unit The time unit.
+     * @return The sum of the components' construction times.
+     */
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert(totalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the construction time of the longest chain of dependent components.
+     * @param unit The time unit.
+     * @return The critical path time.
+     */
+    public long getCriticalPathTime(TimeUnit unit) {
+        return unit.convert(criticalPathNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the wall-clock time the initialization took.
+     * @param unit The time unit.
+     * @return The elapsed time.
+     */
+    public long getElapsedTime(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d components in %.3fs (total %.3fs, critical path %.3fs)",
+                             componentCount, elapsedNanos * 1e-9,
+                             totalNanos * 1e-9, criticalPathNanos * 1e-9);
+    }
+}
@@ -25,6 +25,8 @@ import org.grouplens.grapht.reflect.internal.SimpleInjectionPoint;
 import org.grouplens.grapht.util.AbstractChain;
 
 import javax.annotation.Nullable;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * <p>
@@ -40,6 +42,12 @@ import javax.annotation.Nullable;
 public class InjectionContext extends AbstractChain<Pair<Satisfaction,InjectionPoint>> {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * States accumulated along this context, keyed by accumulator identity.  Guarded by
+     * {@code this}; not serialized.
+     */
+    private transient Map<Accumulator<?>, Object> accumulatedStates;
+
     /**
      * Construct a singleton injection context.
      * @param satisfaction The satisfaction.
@@ -85,4 +93,57 @@ public class InjectionContext extends AbstractChain<Pair<Satisfaction,InjectionP
     public InjectionContext getLeading() {
         return (InjectionContext) previous;
     }
+
+    /**
+     * Get the state of an accumulator after it has consumed the elements of this context.  The
+     * state is computed incrementally: it is remembered on each context, so the state of a context
+     * that extends one whose state is known is computed by a single call to
+     * {@link Accumulator#extend(Object, Pair)}.  Since the solver extends contexts one element at
+     * a time, this makes the cost of maintaining the state independent of the context's depth.
+     *
+     * @param acc The accumulator.  States are remembered by accumulator identity.
+     * @param <S> The type of state.
+     * @return The accumulator's state for this context.
+     */
+    @SuppressWarnings("unchecked")
+    public <S> S getAccumulatedState(Accumulator<S> acc) {
+        synchronized (this) {
+            if (accumulatedStates != null && accumulatedStates.containsKey(acc)) {
+                return (S) accumulatedStates.get(acc);
+            }
+        }
+        // compute without holding the lock, so that we do not hold the locks of the whole chain
+        S prior = previous == null ? acc.initialState() : getLeading().getAccumulatedState(acc);
+        S state = acc.extend(prior, tailValue);
+        synchronized (this) {
+            if (accumulatedStates == null) {
+                accumulatedStates = new IdentityHashMap<Accumulator<?>, Object>(4);
+            }
+            accumulatedStates.put(acc, state);
+        }
+        return state;
+    }
+
+    /**
+     * A function that accumulates state over the elements of a context, for use with
+     * {@link #getAccumulatedState(Accumulator)}.  Implementations must be deterministic, and states
+     * must be immutable, as they are shared between all contexts that extend a common prefix.
+     *
+     * @param <S> The type of state.
+     */
+    public static interface Accumulator<S> {
+        /**
+         * Get the state for the empty context.
+         * @return The initial state.
+         */
+        S initialState();
+
+        /**
+         * Compute the state after consuming one more element of a context.
+         * @param state The state before consuming the element.
+         * @param element The next element of the context.
+         * @return The new state.
+         */
+        S extend(S state, Pair<Satisfaction, InjectionPoint> element);
+    }
 }
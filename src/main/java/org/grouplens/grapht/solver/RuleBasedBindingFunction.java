@@ -19,16 +19,21 @@
 package org.grouplens.grapht.solver;
 
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimap;
 import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.BindingFunctionBuilder;
 import org.grouplens.grapht.context.ContextMatch;
 import org.grouplens.grapht.context.ContextMatcher;
+import org.grouplens.grapht.context.ContextPattern;
+import org.grouplens.grapht.context.MultiPatternMatcher;
 import org.grouplens.grapht.reflect.QualifierMatcher;
 import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 /**
@@ -51,21 +56,88 @@ import java.util.*;
  * where the context that the BindRule is activated in has more priority than
  * the type of the BindRule. If multiple rules tie for best, then the solver
  * fails with a checked exception.
+ * <p>
+ * Rules are indexed by the type of dependency they match, so only the context matchers
+ * that have rules for the desired type are matched against the context.  When those matchers
+ * are all {@link ContextPattern}s, they are matched together by a {@link MultiPatternMatcher}.
  * 
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  */
 public class RuleBasedBindingFunction implements BindingFunction {
-    private static final Map<Object,Set<BindRule>> bindRuleMemory
-            = new WeakHashMap<Object, Set<BindRule>>();
-
     private static final Logger logger = LoggerFactory.getLogger(RuleBasedBindingFunction.class);
     
     private final ImmutableListMultimap<ContextMatcher, BindRule> rules;
+    /**
+     * The rules that can match each desired type, in the same order as {@link #rules}.  This
+     * includes rules whose dependency type is unknown.
+     */
+    private final ImmutableMap<Class<?>, RuleSet> typeIndex;
+    /**
+     * The rules whose dependency type is unknown, for desired types not in the index.
+     */
+    private final RuleSet untypedRules;
+    /**
+     * The rule set this function was built for, or {@code null} if it is not known.
+     */
+    @Nullable
+    private final BindingFunctionBuilder.RuleSet ruleSet;
     
     public RuleBasedBindingFunction(Multimap<ContextMatcher, BindRule> rules) {
+        this(rules, null);
+    }
+
+    /**
+     * Create a binding function for one of the rule sets of a {@link BindingFunctionBuilder}.
+     *
+     * @param rules The rules.
+     * @param ruleSet The rule set the rules make up, or {@code null} if it is not known.
+     */
+    public RuleBasedBindingFunction(Multimap<ContextMatcher, BindRule> rules,
+                                    @Nullable BindingFunctionBuilder.RuleSet ruleSet) {
         Preconditions.notNull("rules", rules);
         
         this.rules = ImmutableListMultimap.copyOf(rules);
+        this.ruleSet = ruleSet;
+
+        Map<Class<?>, ImmutableListMultimap.Builder<ContextMatcher, BindRule>> builders =
+                new LinkedHashMap<Class<?>, ImmutableListMultimap.Builder<ContextMatcher, BindRule>>();
+        for (BindRule br: this.rules.values()) {
+            Class<?> type = getDependencyType(br);
+            if (type != null && !builders.containsKey(type)) {
+                builders.put(type, ImmutableListMultimap.<ContextMatcher, BindRule>builder());
+            }
+        }
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> untyped = ImmutableListMultimap.builder();
+        for (Map.Entry<ContextMatcher, BindRule> e: this.rules.entries()) {
+            Class<?> type = getDependencyType(e.getValue());
+            if (type != null) {
+                builders.get(type).put(e);
+            } else {
+                // we cannot tell what this rule matches, so it is a candidate for every type
+                untyped.put(e);
+                for (ImmutableListMultimap.Builder<ContextMatcher, BindRule> bld: builders.values()) {
+                    bld.put(e);
+                }
+            }
+        }
+        ImmutableMap.Builder<Class<?>, RuleSet> index = ImmutableMap.builder();
+        for (Map.Entry<Class<?>, ImmutableListMultimap.Builder<ContextMatcher, BindRule>> e: builders.entrySet()) {
+            index.put(e.getKey(), new RuleSet(e.getValue().build()));
+        }
+        typeIndex = index.build();
+        untypedRules = new RuleSet(untyped.build());
+    }
+
+    /**
+     * Get the type of dependency a rule matches.
+     * @return The rule's dependency type, or {@code null} if it is not known.
+     */
+    private static Class<?> getDependencyType(BindRule rule) {
+        if (rule instanceof BindRuleImpl) {
+            return ((BindRuleImpl) rule).getDependencyType();
+        } else {
+            return null;
+        }
     }
     
     /**
@@ -75,27 +147,44 @@ public class RuleBasedBindingFunction implements BindingFunction {
     public ListMultimap<ContextMatcher, BindRule> getRules() {
         return rules;
     }
+
+    /**
+     * Get the rule set this function was built for.
+     * @return The rule set, or {@code null} if it is not known.
+     */
+    @Nullable
+    public BindingFunctionBuilder.RuleSet getRuleSet() {
+        return ruleSet;
+    }
     
     @Override
     public BindingResult bind(InjectionContext context, DesireChain desire) throws SolverException {
-        // FIXME Build a better way to remember the applied rules
-        Set<BindRule> appliedRules;
-        synchronized (bindRuleMemory) {
-            appliedRules = bindRuleMemory.get(desire.getKey());
-            if (appliedRules == null) {
-                appliedRules = new HashSet<BindRule>();
-                bindRuleMemory.put(desire.getKey(), appliedRules);
-            }
+        // rules are applied at most once per desire chain
+        Set<BindRule> appliedRules = desire.getAppliedRules();
+
+        // only consider the rules that can match the desired type
+        RuleSet candidates = typeIndex.get(desire.getCurrentDesire().getDesiredType());
+        if (candidates == null) {
+            candidates = untypedRules;
+        }
+        Map<ContextPattern, ContextMatch> patternMatches = null;
+        if (candidates.patternMatcher != null) {
+            patternMatches = candidates.patternMatcher.matches(context);
         }
 
         // collect all bind rules that apply to this desire
         List<Pair<ContextMatch, BindRule>> validRules = new ArrayList<Pair<ContextMatch, BindRule>>();
-        for (ContextMatcher matcher: rules.keySet()) {
-            ContextMatch match = matcher.matches(context);
+        for (ContextMatcher matcher: candidates.rules.keySet()) {
+            ContextMatch match;
+            if (patternMatches != null) {
+                match = patternMatches.get(matcher);
+            } else {
+                match = matcher.matches(context);
+            }
             if (match != null) {
                 // the context applies to the current context, so go through all
                 // bind rules within it and record those that match the desire
-                for (BindRule br: rules.get(matcher)) {
+                for (BindRule br: candidates.rules.get(matcher)) {
                     if (br.matches(desire.getCurrentDesire()) && !appliedRules.contains(br)) {
                         validRules.add(Pair.of(match, br));
                         logger.trace("Matching rule, context: {}, rule: {}", matcher, br);
@@ -141,4 +230,27 @@ public class RuleBasedBindingFunction implements BindingFunction {
         // No rule to apply, so return null to delegate to the next binding function
         return null;
     }
+
+    /**
+     * A group of rules, with a combined matcher for their contexts if they are all patterns.
+     */
+    private static class RuleSet {
+        private final ImmutableListMultimap<ContextMatcher, BindRule> rules;
+        @Nullable
+        private final MultiPatternMatcher patternMatcher;
+
+        public RuleSet(ImmutableListMultimap<ContextMatcher, BindRule> rules) {
+            this.rules = rules;
+            List<ContextPattern> patterns = new ArrayList<ContextPattern>();
+            for (ContextMatcher cm: rules.keySet()) {
+                if (cm instanceof ContextPattern) {
+                    patterns.add((ContextPattern) cm);
+                } else {
+                    patterns = null;
+                    break;
+                }
+            }
+            patternMatcher = patterns == null ? null : new MultiPatternMatcher(patterns);
+        }
+    }
 }
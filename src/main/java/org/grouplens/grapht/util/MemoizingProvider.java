@@ -18,20 +18,49 @@
  */
 package org.grouplens.grapht.util;
 
+import org.grouplens.grapht.InjectionException;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Provider;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * MemoizingProvider is a Provider that enforces memoization or caching on
  * another Provider that it wraps.
+ * <p>
+ * Each memoizing provider has its own construction lock, so unrelated instances can be
+ * constructed concurrently.  Construction is deadlock-safe: if waiting for another thread to
+ * finish constructing the instance would close a cycle of threads waiting on each other (as can
+ * happen when a constructor uses an injected provider of one of its own dependents), or if the
+ * instance's construction requires the instance itself, an {@link InjectionException} is thrown
+ * instead of hanging.  Cycles are detected when a thread starts waiting, so only the thread whose
+ * wait would close the cycle fails; the other threads in the cycle go on once it gives up its
+ * locks.
  *
  * @param <T>
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  */
 @ThreadSafe
 public class MemoizingProvider<T> implements TypedProvider<T> {
+    /**
+     * The provider each thread is waiting to construct, if any.  Threads register and check for
+     * cycles while holding this map's monitor, so at most one thread can close a given cycle.
+     */
+    private static final Map<Thread, MemoizingProvider<?>> waiting =
+            new HashMap<Thread, MemoizingProvider<?>>();
+
     private final Provider<T> wrapped;
+    @Nullable
+    private final Class<?> providedType;
+    private final ReentrantLock lock = new ReentrantLock();
+    // the thread constructing the instance, if any
+    private volatile Thread owner;
 
     // We track a boolean because this supports providing null instances, in
     // which case we can't just check against null to see if we've already
@@ -40,27 +69,102 @@ public class MemoizingProvider<T> implements TypedProvider<T> {
     private volatile boolean invoked;
 
     public MemoizingProvider(@Nonnull Provider<T> provider) {
+        this(provider, null);
+    }
+
+    /**
+     * Create a memoizing provider whose provided type is known.  Injectors should use this, since
+     * the type cannot be recovered from generic providers.
+     *
+     * @param provider The provider to memoize.
+     * @param type The type of object provided, or {@code null} to infer it from the provider.
+     */
+    public MemoizingProvider(@Nonnull Provider<T> provider, @Nullable Class<?> type) {
         Preconditions.notNull("provider", provider);
         wrapped = provider;
+        providedType = type;
         cached = null;
         invoked = false;
     }
 
     @Override
     public Class<?> getProvidedType() {
-        return Types.getProvidedType(wrapped);
+        return providedType != null ? providedType : Types.getProvidedType(wrapped);
+    }
+
+    /**
+     * Build a construction error.  This does not try to infer the provided type, since that fails
+     * for generic providers and would mask the error.
+     */
+    private InjectionException constructionError(String message) {
+        if (providedType != null) {
+            return new InjectionException(providedType, null, message);
+        } else {
+            return new InjectionException(Object.class, null, message + " (provider " + wrapped + ")");
+        }
     }
 
     @Override
     public T get() {
         if (!invoked) {
-            synchronized (this) {
+            if (lock.isHeldByCurrentThread()) {
+                throw constructionError("instance required by its own construction");
+            }
+            acquire();
+            try {
                 if (!invoked) {
+                    owner = Thread.currentThread();
                     cached = wrapped.get();
                     invoked = true;
                 }
+            } finally {
+                owner = null;
+                lock.unlock();
             }
         }
         return cached;
     }
+
+    /**
+     * Acquire the construction lock, failing if waiting for it would deadlock.
+     */
+    private void acquire() {
+        if (lock.tryLock()) {
+            return;
+        }
+        Thread me = Thread.currentThread();
+        synchronized (waiting) {
+            if (wouldDeadlock(me)) {
+                throw constructionError("cyclic construction across threads");
+            }
+            waiting.put(me, this);
+        }
+        try {
+            lock.lock();
+        } finally {
+            synchronized (waiting) {
+                waiting.remove(me);
+            }
+        }
+    }
+
+    /**
+     * Check whether the owner of this provider's lock is, directly or through other threads,
+     * waiting for a lock held by the current thread.  Must be called while holding the monitor
+     * of {@link #waiting}.
+     */
+    private boolean wouldDeadlock(Thread me) {
+        Set<Thread> seen = new HashSet<Thread>();
+        MemoizingProvider<?> provider = this;
+        while (provider != null) {
+            Thread thread = provider.owner;
+            if (thread == null || !seen.add(thread)) {
+                return false;
+            } else if (thread == me) {
+                return true;
+            }
+            provider = waiting.get(thread);
+        }
+        return false;
+    }
 }
@@ -19,11 +19,23 @@
 package org.grouplens.grapht;
 
 import org.grouplens.grapht.annotation.AnnotationBuilder;
+import org.grouplens.grapht.graph.DAGNode;
 import org.grouplens.grapht.reflect.internal.types.*;
+import org.grouplens.grapht.solver.DefaultInjector;
+import org.grouplens.grapht.solver.InitializationStats;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.containsString;
 
 public class InjectorBuilderTest {
     @Test
@@ -259,6 +271,468 @@ public class InjectorBuilderTest {
         i.getInstance(TypeN2.class);
     }
     
+    @Test
+    public void testRepeatedQualifiedLookups() throws Exception {
+        // Test that cached lookups keep qualified and unqualified desires apart
+        InterfaceA plain = new TypeA();
+        InterfaceA qualified = new TypeA();
+        InjectorBuilder b = new InjectorBuilder();
+        b.bind(InterfaceA.class).to(plain);
+        b.bind(InterfaceA.class).withQualifier(RoleA.class).to(qualified);
+        Injector i = b.build();
+
+        RoleA role = new AnnotationBuilder<RoleA>(RoleA.class).build();
+        for (int n = 0; n < 3; n++) {
+            Assert.assertSame(plain, i.getInstance(InterfaceA.class));
+            Assert.assertSame(qualified, i.getInstance(role, InterfaceA.class));
+        }
+    }
+
+    @Test
+    public void testPreResolve() throws Exception {
+        // Test that pre-resolved types are in the graph and served as usual
+        InjectorBuilder b = new InjectorBuilder();
+        b.bind(InterfaceA.class).to(TypeA.class);
+        b.bind(InterfaceB.class).to(TypeB.class);
+        DefaultInjector i = (DefaultInjector) b.build();
+
+        i.preResolve(TypeC.class, InterfaceA.class);
+        DAGNode<Component, Dependency> graph = i.getSolver().getGraph();
+        Assert.assertEquals(2, graph.getOutgoingEdges().size());
+
+        TypeC c = i.getInstance(TypeC.class);
+        Assert.assertSame(c.getInterfaceA(), i.getInstance(InterfaceA.class));
+        // no new resolution was needed
+        Assert.assertSame(graph, i.getSolver().getGraph());
+    }
+
+    @Test
+    public void testConcurrentGetInstance() throws Exception {
+        // Test that threads racing to resolve and instantiate see the same memoized objects
+        InjectorBuilder b = new InjectorBuilder();
+        b.bind(InterfaceA.class).to(TypeA.class);
+        b.bind(InterfaceB.class).to(TypeB.class);
+        final Injector i = b.build();
+
+        final CyclicBarrier barrier = new CyclicBarrier(8);
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<TypeC>> results = new ArrayList<Future<TypeC>>();
+            for (int t = 0; t < 8; t++) {
+                results.add(exec.submit(new Callable<TypeC>() {
+                    @Override
+                    public TypeC call() throws Exception {
+                        barrier.await();
+                        TypeC c = null;
+                        for (int n = 0; n < 100; n++) {
+                            c = i.getInstance(TypeC.class);
+                        }
+                        return c;
+                    }
+                }));
+            }
+            TypeC first = results.get(0).get();
+            for (Future<TypeC> f: results) {
+                Assert.assertSame(first, f.get());
+            }
+            Assert.assertSame(first.getInterfaceA(), i.getInstance(InterfaceA.class));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test
+    public void testPreInstantiate() throws Exception {
+        // Test that eager instantiation builds the memoized components in the graph
+        EagerLeaf.created.set(0);
+        InjectorBuilder b = InjectorBuilder.create().preInstantiate(EagerRoot.class);
+        DefaultInjector i = (DefaultInjector) b.build();
+        Assert.assertEquals(1, EagerLeaf.created.get());
+        InitializationStats stats = i.getInitializationStats();
+        Assert.assertNotNull(stats);
+        // the leaf, the two branches and the root
+        Assert.assertEquals(4, stats.getComponentCount());
+        Assert.assertTrue(stats.getCriticalPathTime(TimeUnit.NANOSECONDS)
+                          <= stats.getTotalTime(TimeUnit.NANOSECONDS));
+
+        EagerRoot root = i.getInstance(EagerRoot.class);
+        Assert.assertSame(root.left.leaf, root.right.leaf);
+        Assert.assertEquals(1, EagerLeaf.created.get());
+    }
+
+    @Test
+    public void testPreInstantiateReportsFailedType() throws Exception {
+        // Test that a failure to resolve one of several eager types names the failing type
+        InjectorBuilder b = InjectorBuilder.create()
+                                           .preInstantiate(EagerRoot.class, ShouldWork.class);
+        try {
+            b.build();
+            Assert.fail("unresolvable eager type should fail");
+        } catch (InjectionException e) {
+            Assert.assertEquals(ShouldWork.class, e.getType());
+        }
+    }
+
+    @Test
+    public void testParallelPreInstantiate() throws Exception {
+        // Test that eager instantiation on an executor shares components and reports timings
+        EagerLeaf.created.set(0);
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            DefaultInjector i = (DefaultInjector) InjectorBuilder.create().build();
+            Assert.assertNull(i.getInitializationStats());
+            i.preResolve(EagerRoot.class);
+            InitializationStats stats = i.instantiateMemoized(exec);
+            Assert.assertSame(stats, i.getInitializationStats());
+            Assert.assertEquals(1, EagerLeaf.created.get());
+            // the leaf, the two branches and the root
+            Assert.assertEquals(4, stats.getComponentCount());
+            Assert.assertTrue(stats.getCriticalPathTime(TimeUnit.NANOSECONDS)
+                              <= stats.getTotalTime(TimeUnit.NANOSECONDS));
+
+            EagerRoot root = i.getInstance(EagerRoot.class);
+            Assert.assertSame(root.left.leaf, root.right.leaf);
+            Assert.assertEquals(1, EagerLeaf.created.get());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetInstanceAsync() throws Exception {
+        // Test that racing asynchronous requests construct memoized components once
+        EagerLeaf.created.set(0);
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            DefaultInjector i = (DefaultInjector) InjectorBuilder.create().build();
+            List<Future<EagerRoot>> results = new ArrayList<Future<EagerRoot>>();
+            for (int n = 0; n < 8; n++) {
+                results.add(i.getInstanceAsync(EagerRoot.class, exec));
+            }
+            EagerRoot first = results.get(0).get();
+            Assert.assertSame(first.left.leaf, first.right.leaf);
+            for (Future<EagerRoot> f: results) {
+                Assert.assertSame(first, f.get());
+            }
+            Assert.assertSame(first, i.getInstance(EagerRoot.class));
+            Assert.assertEquals(1, EagerLeaf.created.get());
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test
+    public void testChildSharesUnaffectedComponents() throws Exception {
+        // Test that a child reuses the parent's resolution and instances it cannot affect
+        DefaultInjector parent = (DefaultInjector) InjectorBuilder.create().build();
+        EagerRoot root = parent.getInstance(EagerRoot.class);
+
+        DefaultInjector child = parent.createChild(new Module() {
+            @Override
+            public void configure(Context ctx) {
+                ctx.bind(InterfaceA.class).to(TypeA.class);
+            }
+        });
+        Assert.assertSame(root, child.getInstance(EagerRoot.class));
+        // nothing was resolved by the child
+        Assert.assertTrue(child.getSolver().getGraph().getOutgoingEdges().isEmpty());
+        Assert.assertTrue(child.getInstance(InterfaceA.class) instanceof TypeA);
+    }
+
+    @Test
+    public void testChildOverridesBindings() throws Exception {
+        // Test that a child re-resolves what its bindings change, sharing the rest
+        EagerLeaf.created.set(0);
+        DefaultInjector parent = (DefaultInjector) InjectorBuilder.create().build();
+        EagerRoot root = parent.getInstance(EagerRoot.class);
+
+        Injector child = parent.createChild(new Module() {
+            @Override
+            public void configure(Context ctx) {
+                ctx.bind(EagerRight.class).to(OtherRight.class);
+            }
+        });
+        EagerRoot childRoot = child.getInstance(EagerRoot.class);
+        Assert.assertNotSame(root, childRoot);
+        Assert.assertTrue(childRoot.right instanceof OtherRight);
+        Assert.assertFalse(root.right instanceof OtherRight);
+        // the unaffected parts are the parent's instances
+        Assert.assertSame(root.left, childRoot.left);
+        Assert.assertSame(root.left.leaf, childRoot.right.leaf);
+        Assert.assertEquals(1, EagerLeaf.created.get());
+        // and the parent is unchanged
+        Assert.assertSame(root, parent.getInstance(EagerRoot.class));
+    }
+
+    @Test
+    public void testChildKeepsParentExplicitSupertypeBinding() throws Exception {
+        // Test that a child binding a subtype does not override the parent's explicit binding
+        // of a supertype, just as when both bindings are in one builder
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(Shape.class).to(Circle.class);
+        DefaultInjector parent = (DefaultInjector) b.build();
+        Injector child = parent.createChild(new Module() {
+            @Override
+            public void configure(Context ctx) {
+                ctx.bind(Polygon.class).to(Square.class);
+            }
+        });
+        Assert.assertTrue(child.getInstance(Shape.class) instanceof Circle);
+        Assert.assertTrue(child.getInstance(Polygon.class) instanceof Square);
+
+        InjectorBuilder single = InjectorBuilder.create();
+        single.bind(Shape.class).to(Circle.class);
+        single.bind(Polygon.class).to(Square.class);
+        Assert.assertTrue(single.build().getInstance(Shape.class) instanceof Circle);
+    }
+
+    @Test
+    public void testResolutionPool() throws Exception {
+        // Test that injectors resolve in a caller-owned pool, and children use it too
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            DefaultInjector parent = (DefaultInjector) InjectorBuilder.create()
+                                                                      .setResolutionPool(pool)
+                                                                      .build();
+            EagerRoot root = parent.getInstance(EagerRoot.class);
+            Assert.assertSame(root.left.leaf, root.right.leaf);
+
+            Injector child = parent.createChild(new Module() {
+                @Override
+                public void configure(Context ctx) {
+                    ctx.bind(EagerRight.class).to(OtherRight.class);
+                }
+            });
+            EagerRoot childRoot = child.getInstance(EagerRoot.class);
+            Assert.assertTrue(childRoot.right instanceof OtherRight);
+            Assert.assertSame(root.left, childRoot.left);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testScopedBinding() throws Exception {
+        // Test that scoped components are shared within a scope and dropped when it exits
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(EagerLeaf.class).scoped().to(EagerLeaf.class);
+        b.bind(EagerLeft.class).unshared().to(EagerLeft.class);
+        Injector i = b.build();
+
+        EagerLeaf leaf;
+        InjectionScope scope = InjectionScope.enter();
+        try {
+            EagerLeft first = i.getInstance(EagerLeft.class);
+            EagerLeft second = i.getInstance(EagerLeft.class);
+            Assert.assertNotSame(first, second);
+            Assert.assertSame(first.leaf, second.leaf);
+            leaf = first.leaf;
+
+            InjectionScope inner = InjectionScope.enter();
+            try {
+                Assert.assertNotSame(leaf, i.getInstance(EagerLeft.class).leaf);
+            } finally {
+                inner.exit();
+            }
+            Assert.assertSame(leaf, i.getInstance(EagerLeft.class).leaf);
+        } finally {
+            scope.exit();
+        }
+        Assert.assertFalse(scope.isActive());
+        Assert.assertNull(InjectionScope.current());
+
+        scope = InjectionScope.enter();
+        try {
+            Assert.assertNotSame(leaf, i.getInstance(EagerLeft.class).leaf);
+        } finally {
+            scope.exit();
+        }
+
+        try {
+            i.getInstance(EagerLeft.class);
+            Assert.fail("scoped component used outside of a scope");
+        } catch (InjectionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testScopedAsync() throws Exception {
+        // Test that asynchronous construction uses the caller's scope on executor threads
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(EagerLeaf.class).scoped().to(EagerLeaf.class);
+        b.bind(EagerLeft.class).unshared().to(EagerLeft.class);
+        DefaultInjector i = (DefaultInjector) b.build();
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        InjectionScope scope = InjectionScope.enter();
+        try {
+            EagerLeft left = i.getInstanceAsync(EagerLeft.class, exec).get();
+            Assert.assertSame(left.leaf, i.getInstance(EagerLeft.class).leaf);
+        } finally {
+            scope.exit();
+            exec.shutdown();
+        }
+        Assert.assertNull(InjectionScope.current());
+    }
+
+    @Test
+    public void testScopedInstanceCreatedOnce() throws Exception {
+        // Test that threads sharing a scope construct a scoped instance only once
+        final AtomicInteger created = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Provider<Object> scoped = InjectionScope.scope(new Provider<Object>() {
+            @Override
+            public Object get() {
+                created.incrementAndGet();
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Object();
+            }
+        }, Object.class);
+        final List<Object> results = Collections.synchronizedList(new ArrayList<Object>());
+        InjectionScope scope = InjectionScope.enter();
+        List<Thread> threads = new ArrayList<Thread>();
+        try {
+            for (int n = 0; n < 4; n++) {
+                threads.add(new Thread(scope.propagate(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                        results.add(scoped.get());
+                    }
+                })));
+            }
+            for (Thread th: threads) {
+                th.start();
+            }
+            start.countDown();
+            for (Thread th: threads) {
+                th.join();
+            }
+            Assert.assertEquals(4, results.size());
+            for (Object obj: results) {
+                Assert.assertSame(results.get(0), obj);
+            }
+            Assert.assertSame(results.get(0), scoped.get());
+            Assert.assertEquals(1, created.get());
+        } finally {
+            scope.exit();
+        }
+    }
+
+    @Test
+    public void testMemoizedDependingOnScopedFails() throws Exception {
+        // Test that a memoized component cannot capture a scoped dependency
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(EagerLeaf.class).scoped().to(EagerLeaf.class);
+        Injector i = b.build();
+        InjectionScope scope = InjectionScope.enter();
+        try {
+            i.getInstance(EagerLeft.class);
+            Assert.fail("memoized component with a scoped dependency should fail");
+        } catch (InjectionException e) {
+            Assert.assertEquals(EagerLeft.class, e.getType());
+            Assert.assertThat(e.getMessage(), containsString("scoped"));
+        } finally {
+            scope.exit();
+        }
+
+        b = InjectorBuilder.create().preInstantiate(EagerLeft.class);
+        b.bind(EagerLeaf.class).scoped().to(EagerLeaf.class);
+        try {
+            b.build();
+            Assert.fail("memoized component with a scoped dependency should fail");
+        } catch (InjectionException e) {
+            Assert.assertThat(e.getMessage(), containsString("depends on scoped component"));
+        }
+    }
+
+    @Test
+    public void testSelfConstructionFails() throws Exception {
+        // Test that a component needing itself during construction gets a clear error
+        Injector i = InjectorBuilder.create()
+                                    .setProviderInjectionEnabled(true)
+                                    .build();
+        try {
+            i.getInstance(SelfProviding.class);
+            Assert.fail("self-dependent construction should fail");
+        } catch (InjectionException e) {
+            boolean reported = false;
+            for (Throwable th = e; th != null; th = th.getCause()) {
+                Assert.assertFalse("unexpected " + th, th instanceof IllegalArgumentException);
+                reported |= String.valueOf(th.getMessage()).contains("its own construction");
+            }
+            Assert.assertTrue(reported);
+        }
+    }
+
+    public static class SelfProviding {
+        @Inject
+        public SelfProviding(Provider<SelfProviding> self) {
+            self.get();
+        }
+    }
+
+    public static class EagerLeaf {
+        static final AtomicInteger created = new AtomicInteger();
+
+        @Inject
+        public EagerLeaf() {
+            created.incrementAndGet();
+        }
+    }
+
+    public static class EagerLeft {
+        final EagerLeaf leaf;
+
+        @Inject
+        public EagerLeft(EagerLeaf leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    public static class EagerRight {
+        final EagerLeaf leaf;
+
+        @Inject
+        public EagerRight(EagerLeaf leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    public static class OtherRight extends EagerRight {
+        @Inject
+        public OtherRight(EagerLeaf leaf) {
+            super(leaf);
+        }
+    }
+
+    public static class EagerRoot {
+        final EagerLeft left;
+        final EagerRight right;
+
+        @Inject
+        public EagerRoot(EagerLeft left, EagerRight right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    public static interface Shape { }
+
+    public static interface Polygon extends Shape { }
+
+    public static class Circle implements Shape { }
+
+    public static class Square implements Polygon { }
+
     public static interface ShouldWork { }
     
     public static class NotInjectable implements ShouldWork {
@@ -20,6 +20,7 @@ package org.grouplens.grapht;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
+import junit.framework.TestSuite;
 import org.atinject.tck.Tck;
 import org.atinject.tck.auto.*;
 import org.atinject.tck.auto.accessories.SpareTire;
@@ -27,9 +28,17 @@ import org.atinject.tck.auto.accessories.SpareTire;
 public class TckTest extends TestCase {
     
     public static Test suite() {
+        TestSuite suite = new TestSuite("JSR 330 TCK");
+        suite.addTest(carTests(InstantiationBackend.REFLECTION));
+        suite.addTest(carTests(InstantiationBackend.METHOD_HANDLES));
+        return suite;
+    }
+
+    private static Test carTests(InstantiationBackend backend) {
         InjectorBuilder ib = new InjectorBuilder()
             .setDefaultCachePolicy(CachePolicy.NEW_INSTANCE)
-            .setProviderInjectionEnabled(true);
+            .setProviderInjectionEnabled(true)
+            .setInstantiationBackend(backend);
         
         ib.bind(Car.class).to(Convertible.class);
         ib.bind(Seat.class).withQualifier(Drivers.class).to(DriversSeat.class);
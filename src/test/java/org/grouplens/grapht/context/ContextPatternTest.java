@@ -27,6 +27,7 @@ import org.grouplens.grapht.reflect.MockSatisfaction;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -274,6 +275,53 @@ public class ContextPatternTest {
         assertThat(patLimited.matches(ctx1), lessThan(patAny.matches(ctx1)));
     }
 
+    @Test
+    public void testGreedyMatchElements() throws Exception {
+        // Test that the leading wildcard consumes as much as it can, so the last A is matched
+        InjectionContext ctx = makeContext(A.class, B.class, A.class, C.class);
+        ContextElementMatcher any = ContextElements.matchAny();
+        ContextElementMatcher a = ContextElements.matchType(A.class);
+        List<MatchElement> expected = new ArrayList<MatchElement>();
+        expected.add(any.apply(ctx.get(0)));
+        expected.add(any.apply(ctx.get(1)));
+        expected.add(any.apply(ctx.get(2)));
+        expected.add(a.apply(ctx.get(3)));
+        expected.add(any.apply(ctx.get(4)));
+        assertThat(ContextPattern.subsequence(A.class).matches(ctx),
+                   equalTo(ContextMatch.create(expected)));
+    }
+
+    @Test(timeout = 5000)
+    public void testDeepContextManyWildcards() throws Exception {
+        // Test that failing to match a deep context does not backtrack exponentially
+        Class<?>[] types = new Class<?>[40];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = i % 2 == 0 ? A.class : B.class;
+        }
+        InjectionContext ctx = makeContext(types);
+        ContextPattern pat = ContextPattern.subsequence(A.class, B.class, A.class, B.class,
+                                                        A.class, B.class, A.class, C.class);
+        assertThat(pat.matches(ctx), nullValue());
+        assertThat(ContextPattern.subsequence(A.class, B.class, A.class, B.class, A.class, B.class)
+                                 .matches(ctx),
+                   notNullValue());
+    }
+
+    @Test
+    public void testIncrementalMatchSameAsFresh() throws Exception {
+        // Test that matching a context step by step gives the same result as matching it at once
+        ContextPattern pat = ContextPattern.subsequence(A.class, B.class);
+        ContextPattern fresh = ContextPattern.subsequence(A.class, B.class);
+        InjectionContext ctx = makeContext(A.class);
+        assertThat(pat.matches(ctx), nullValue());
+        for (Class<?> type: new Class<?>[]{B.class, C.class, B.class, A.class}) {
+            ctx = ctx.extend(new MockSatisfaction(type, new ArrayList<Desire>()),
+                             new MockInjectionPoint(type, null, false));
+            assertThat(pat.matches(ctx), notNullValue());
+        }
+        assertThat(fresh.matches(ctx), equalTo(pat.matches(ctx)));
+    }
+
     private InjectionContext makeContext(Class<?>... types) {
         InjectionContext context = DependencySolver.initialContext();
         for (Class<?> type: types) {
@@ -0,0 +1,76 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.context;
+
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.MockInjectionPoint;
+import org.grouplens.grapht.reflect.MockSatisfaction;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.grouplens.grapht.solver.InjectionContext;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class MultiPatternMatcherTest {
+    @Test
+    public void testMatchesSameAsPatterns() throws Exception {
+        // Test that matching together gives the same results as matching each pattern
+        List<ContextPattern> patterns = Arrays.asList(
+                ContextPattern.any(),
+                ContextPattern.subsequence(A.class),
+                ContextPattern.subsequence(B.class, A.class),
+                ContextPattern.subsequence(A.class, C.class),
+                ContextPattern.any().append(B.class),
+                ContextPattern.empty());
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+        InjectionContext ctx = makeContext(A.class, B.class, A.class, B.class);
+
+        Map<ContextPattern, ContextMatch> matches = matcher.matches(ctx);
+        assertThat(matches.keySet(), contains(patterns.get(0), patterns.get(1),
+                                              patterns.get(2), patterns.get(4)));
+        for (ContextPattern pat: patterns) {
+            assertThat(matches.get(pat), equalTo(pat.matches(ctx)));
+        }
+    }
+
+    @Test
+    public void testNoPatterns() throws Exception {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(new ArrayList<ContextPattern>());
+        assertThat(matcher.matches(makeContext(A.class)).entrySet(), hasSize(0));
+    }
+
+    private InjectionContext makeContext(Class<?>... types) {
+        InjectionContext context = DependencySolver.initialContext();
+        for (Class<?> type: types) {
+            MockSatisfaction sat = new MockSatisfaction(type, new ArrayList<Desire>());
+            context = context.extend(sat, new MockInjectionPoint(type, null, false));
+        }
+        return context;
+    }
+
+    private static class A {}
+    private static class B {}
+    private static class C {}
+}
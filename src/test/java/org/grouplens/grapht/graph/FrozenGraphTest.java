@@ -0,0 +1,106 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.graph;
+
+import com.google.common.base.Predicates;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class FrozenGraphTest {
+    DAGNode<String,String> foo;
+    DAGNode<String,String> graph;
+
+    @Before
+    public void createGraph() {
+        foo = DAGNode.singleton("foo");
+        DAGNode<String,String> bar = DAGNode.<String,String>newBuilder("bar")
+                                            .addEdge(foo, "wombat")
+                                            .build();
+        graph = DAGNode.<String,String>newBuilder("head")
+                       .addEdge(bar, "wumpus")
+                       .addEdge(foo, "woozle")
+                       .build();
+    }
+
+    @Test
+    public void testFreezeSingleton() {
+        FrozenGraph<String,String> frozen = FrozenGraph.freeze(foo);
+        assertThat(frozen.getNodeCount(), equalTo(1));
+        assertThat(frozen.getEdgeCount(), equalTo(0));
+        assertThat(frozen.getLabel(frozen.getRoot()), equalTo("foo"));
+        assertThat(frozen.getOutDegree(frozen.getRoot()), equalTo(0));
+    }
+
+    @Test
+    public void testNavigate() {
+        FrozenGraph<String,String> frozen = FrozenGraph.freeze(graph);
+        assertThat(frozen.getNodeCount(), equalTo(3));
+        assertThat(frozen.getEdgeCount(), equalTo(3));
+        int root = frozen.getRoot();
+        assertThat(frozen.getLabel(root), equalTo("head"));
+        assertThat(frozen.getOutDegree(root), equalTo(2));
+
+        int wumpus = frozen.findOutgoingEdge(root, Predicates.equalTo("wumpus"));
+        assertThat(wumpus, greaterThanOrEqualTo(frozen.getFirstEdge(root)));
+        int bar = frozen.getEdgeTail(wumpus);
+        assertThat(frozen.getLabel(bar), equalTo("bar"));
+        assertThat(frozen.findOutgoingEdge(root, Predicates.equalTo("wombat")), equalTo(-1));
+
+        int wombat = frozen.findOutgoingEdge(bar, Predicates.equalTo("wombat"));
+        assertThat(frozen.getEdgeLabel(wombat), equalTo("wombat"));
+        int woozle = frozen.findOutgoingEdge(root, Predicates.equalTo("woozle"));
+        // both edges reach the same shared node
+        assertThat(frozen.getEdgeTail(wombat), equalTo(frozen.getEdgeTail(woozle)));
+        assertThat(frozen.getLabel(frozen.getEdgeTail(wombat)), equalTo("foo"));
+    }
+
+    @Test
+    public void testTopologicalNumbering() {
+        FrozenGraph<String,String> frozen = FrozenGraph.freeze(graph);
+        for (int n = 0; n < frozen.getNodeCount(); n++) {
+            for (int e = frozen.getFirstEdge(n); e < frozen.getFirstEdge(n + 1); e++) {
+                assertThat(frozen.getEdgeTail(e), lessThan(n));
+            }
+        }
+    }
+
+    @Test
+    public void testThaw() {
+        DAGNode<String,String> thawed = FrozenGraph.freeze(graph).thaw();
+        assertThat(thawed.getLabel(), equalTo("head"));
+        assertThat(thawed.getReachableNodes(), hasSize(3));
+        DAGNode<String,String> bar = thawed.getOutgoingEdgeWithLabel("wumpus").getTail();
+        DAGNode<String,String> foo2 = thawed.getOutgoingEdgeWithLabel("woozle").getTail();
+        assertThat(bar.getOutgoingEdgeWithLabel("wombat").getTail(), sameInstance(foo2));
+        assertThat(foo2.getLabel(), equalTo("foo"));
+    }
+
+    @Test
+    public void testSerialize() {
+        FrozenGraph<String,String> frozen = FrozenGraph.freeze(graph);
+        FrozenGraph<String,String> copy = SerializationUtils.clone(frozen);
+        assertThat(copy.getNodeCount(), equalTo(3));
+        assertThat(copy.getLabel(copy.getRoot()), equalTo("head"));
+        assertThat(copy.thaw().getReachableNodes(), hasSize(3));
+    }
+}
@@ -138,4 +138,41 @@ public class MergePoolTest {
         assertThat(pool.merge(p2), isIn(merged.getReachableNodes()));
         assertThat(pool.merge(p1), isIn(merged.getReachableNodes()));
     }
+
+    @Test
+    public void testPoolStatistics() {
+        DAGNode<String,String> foo = DAGNode.singleton("foo");
+        DAGNode<String,String> graph = DAGNode.<String,String>newBuilder("root")
+                                              .addEdge(foo, "wombat")
+                                              .build();
+        pool.merge(graph);
+        assertThat(pool.getPoolSize(), equalTo(2));
+        assertThat(pool.getMissCount(), equalTo(2L));
+        assertThat(pool.getHitCount(), equalTo(0L));
+
+        // an equivalent graph is merged entirely into existing nodes
+        DAGNode<String,String> graph2 = DAGNode.<String,String>newBuilder("root")
+                                               .addEdge(DAGNode.<String,String>singleton("foo"), "wombat")
+                                               .build();
+        assertThat(pool.merge(graph2), sameInstance(graph));
+        assertThat(pool.getPoolSize(), equalTo(2));
+        assertThat(pool.getMissCount(), equalTo(2L));
+        assertThat(pool.getHitCount(), equalTo(2L));
+
+        // a new root reuses the child
+        DAGNode<String,String> graph3 = DAGNode.<String,String>newBuilder("other")
+                                               .addEdge(DAGNode.<String,String>singleton("foo"), "wombat")
+                                               .build();
+        DAGNode<String,String> merged = pool.merge(graph3);
+        assertThat(merged.getAdjacentNodes(), contains(foo));
+        assertThat(pool.getPoolSize(), equalTo(3));
+        assertThat(pool.getMissCount(), equalTo(3L));
+        assertThat(pool.getHitCount(), equalTo(3L));
+
+        // merging a pooled graph again counts all of its nodes as hits
+        assertThat(pool.merge(merged), sameInstance(merged));
+        assertThat(pool.getPoolSize(), equalTo(3));
+        assertThat(pool.getMissCount(), equalTo(3L));
+        assertThat(pool.getHitCount(), equalTo(5L));
+    }
 }
@@ -0,0 +1,85 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.graph;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class NodeInternerTest {
+    NodeInterner<String,String> interner;
+
+    @Before
+    public void createInterner() {
+        interner = NodeInterner.create();
+    }
+
+    @Test
+    public void testInternSingleton() {
+        DAGNode<String,String> node = interner.singleton("foo");
+        assertThat(interner.singleton("foo"), sameInstance(node));
+        assertThat(interner.newBuilder("foo").build(), sameInstance(node));
+        assertThat(interner.singleton("bar"), not(sameInstance(node)));
+        // plain builders do not intern
+        assertThat(DAGNode.<String,String>newBuilder("foo").build(), not(sameInstance(node)));
+    }
+
+    @Test
+    public void testInternGraph() {
+        DAGNode<String,String> graph =
+                interner.newBuilder("root")
+                        .addEdge(interner.newBuilder("a")
+                                         .addEdge(interner.singleton("c"), "x")
+                                         .build(), "y")
+                        .addEdge(interner.singleton("b"), "z")
+                        .build();
+        DAGNode<String,String> graph2 =
+                interner.newBuilder("root")
+                        .addEdge(interner.singleton("b"), "z")
+                        .addEdge(interner.newBuilder("a")
+                                         .addEdge(interner.singleton("c"), "x")
+                                         .build(), "y")
+                        .build();
+        assertThat(graph2, sameInstance(graph));
+
+        // a different edge label makes a different node
+        DAGNode<String,String> other =
+                interner.newBuilder("root")
+                        .addEdge(interner.singleton("b"), "w")
+                        .build();
+        assertThat(other, not(sameInstance(graph)));
+    }
+
+    @Test
+    public void testMergeInterned() {
+        MergePool<String,String> pool = MergePool.create();
+        DAGNode<String,String> graph =
+                interner.newBuilder("root")
+                        .addEdge(interner.singleton("a"), "x")
+                        .build();
+        assertThat(pool.merge(graph), sameInstance(graph));
+        DAGNode<String,String> graph2 =
+                interner.newBuilder("root")
+                        .addEdge(interner.singleton("a"), "x")
+                        .build();
+        assertThat(pool.merge(graph2), sameInstance(graph));
+    }
+}
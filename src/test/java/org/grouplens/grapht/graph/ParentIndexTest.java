@@ -0,0 +1,158 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.graph;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ParentIndexTest {
+    @Test
+    public void testSingleton() {
+        DAGNode<String,String> foo = DAGNode.singleton("foo");
+        ParentIndex<String,String> index = ParentIndex.create(foo);
+        assertThat(index.getRoot(), sameInstance(foo));
+        assertThat(index.contains(foo), equalTo(true));
+        assertThat(index.contains(DAGNode.<String,String>singleton("foo")), equalTo(false));
+    }
+
+    @Test
+    public void testSetRoot() {
+        DAGNode<String,String> foo = DAGNode.singleton("foo");
+        DAGNode<String,String> bar = DAGNode.singleton("bar");
+        DAGNode<String,String> root = DAGNode.<String,String>newBuilder("root")
+                                             .addEdge(foo, "a")
+                                             .build();
+        ParentIndex<String,String> index = ParentIndex.create(root);
+        assertThat(index.contains(foo), equalTo(true));
+        assertThat(index.getIncomingEdges(foo), contains(DAGEdge.create(root, foo, "a")));
+
+        DAGNode<String,String> root2 = DAGNode.<String,String>newBuilder("root")
+                                              .addEdge(bar, "b")
+                                              .build();
+        index.setRoot(root2);
+        assertThat(index.contains(root), equalTo(false));
+        assertThat(index.contains(foo), equalTo(false));
+        assertThat(index.contains(bar), equalTo(true));
+        assertThat(index.getIncomingEdges(foo), hasSize(0));
+    }
+
+    @Test
+    public void testReplaceSharedNode() {
+        DAGNode<String,String> foo = DAGNode.singleton("foo");
+        DAGNode<String,String> left = DAGNode.<String,String>newBuilder("left")
+                                             .addEdge(foo, "x")
+                                             .build();
+        DAGNode<String,String> right = DAGNode.<String,String>newBuilder("right")
+                                              .addEdge(foo, "y")
+                                              .build();
+        DAGNode<String,String> other = DAGNode.singleton("other");
+        DAGNode<String,String> root = DAGNode.<String,String>newBuilder("root")
+                                             .addEdge(left, "l")
+                                             .addEdge(right, "r")
+                                             .addEdge(other, "o")
+                                             .build();
+        ParentIndex<String,String> index = ParentIndex.create(root);
+
+        DAGNode<String,String> bar = DAGNode.<String,String>newBuilder("bar")
+                                            .addEdge(other, "z")
+                                            .build();
+        Map<DAGNode<String,String>,DAGNode<String,String>> memory = Maps.newHashMap();
+        DAGNode<String,String> result = index.replaceNode(foo, bar, memory);
+        assertThat(result, sameInstance(index.getRoot()));
+        assertThat(memory.keySet(), containsInAnyOrder(foo, left, right, root));
+        // the untouched branch is shared
+        assertThat(result.getOutgoingEdgeWithLabel("o").getTail(), sameInstance(other));
+        DAGNode<String,String> newLeft = result.getOutgoingEdgeWithLabel("l").getTail();
+        DAGNode<String,String> newRight = result.getOutgoingEdgeWithLabel("r").getTail();
+        assertThat(newLeft.getOutgoingEdgeWithLabel("x").getTail(), sameInstance(bar));
+        assertThat(newRight.getOutgoingEdgeWithLabel("y").getTail(), sameInstance(bar));
+
+        // the index tracks the new graph
+        for (DAGNode<String,String> node: result.getReachableNodes()) {
+            assertThat(index.contains(node), equalTo(true));
+            assertThat(index.getIncomingEdges(node), equalTo(result.getIncomingEdges(node)));
+        }
+        assertThat(index.contains(foo), equalTo(false));
+        assertThat(index.contains(left), equalTo(false));
+        assertThat(index.contains(root), equalTo(false));
+    }
+
+    @Test
+    public void testReplaceAbsentNode() {
+        DAGNode<String,String> foo = DAGNode.singleton("foo");
+        DAGNode<String,String> root = DAGNode.<String,String>newBuilder("root")
+                                             .addEdge(foo, "a")
+                                             .build();
+        ParentIndex<String,String> index = ParentIndex.create(root);
+        Map<DAGNode<String,String>,DAGNode<String,String>> memory = Maps.newHashMap();
+        DAGNode<String,String> result = index.replaceNode(DAGNode.<String,String>singleton("bar"),
+                                                          DAGNode.<String,String>singleton("blatz"),
+                                                          memory);
+        assertThat(result, sameInstance(root));
+        assertThat(memory.isEmpty(), equalTo(true));
+    }
+
+    /**
+     * Replace hundreds of deferred leaves one at a time, as the solver does when it fills in
+     * provider-injected dependencies; each replacement should only copy the leaf's ancestors.
+     */
+    @Test(timeout = 10000)
+    public void testManyDeferredReplacements() {
+        int count = 500;
+        List<DAGNode<String,String>> leaves = Lists.newArrayList();
+        DAGNodeBuilder<String,String> rootBuilder = DAGNode.newBuilder("root");
+        DAGNode<String,String> spine = DAGNode.singleton("spine");
+        for (int i = 0; i < count; i++) {
+            DAGNode<String,String> leaf = DAGNode.singleton("deferred" + i);
+            leaves.add(leaf);
+            spine = DAGNode.<String,String>newBuilder("spine" + i)
+                           .addEdge(spine, "next")
+                           .build();
+            rootBuilder.addEdge(DAGNode.<String,String>newBuilder("parent" + i)
+                                       .addEdge(leaf, "leaf")
+                                       .addEdge(spine, "spine")
+                                       .build(), "p" + i);
+        }
+        ParentIndex<String,String> index = ParentIndex.create(rootBuilder.build());
+
+        DAGNode<String,String> target = DAGNode.singleton("target");
+        for (DAGNode<String,String> leaf: leaves) {
+            assertThat(index.contains(leaf), equalTo(true));
+            DAGNode<String,String> filled = DAGNode.<String,String>newBuilder(leaf.getLabel())
+                                                   .addEdge(target, "dep")
+                                                   .build();
+            Map<DAGNode<String,String>,DAGNode<String,String>> memory = Maps.newHashMap();
+            index.replaceNode(leaf, filled, memory);
+            assertThat(memory.size(), equalTo(3));
+            assertThat(index.contains(leaf), equalTo(false));
+            assertThat(index.contains(filled), equalTo(true));
+        }
+        DAGNode<String,String> root = index.getRoot();
+        assertThat(root.getOutgoingEdges(), hasSize(count));
+        assertThat(index.getIncomingEdges(target), hasSize(count));
+        assertThat(root.getIncomingEdges(target), hasSize(count));
+    }
+}
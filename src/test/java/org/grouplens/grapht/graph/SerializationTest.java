@@ -39,6 +39,7 @@ import javax.inject.Named;
 import java.io.*;
 
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.junit.Assert.assertThat;
 
@@ -73,6 +74,22 @@ public class SerializationTest {
                    hasSize(2));
     }
     
+    @Test
+    public void testDeepGraph() throws Exception {
+        DAGNode<String, String> node = DAGNode.singleton("0");
+        for (int i = 1; i < 10000; i++) {
+            node = DAGNode.<String, String>newBuilder(Integer.toString(i))
+                          .addEdge(node, "next")
+                          .build();
+        }
+        write(node);
+        DAGNode<String, String> read = read();
+
+        Assert.assertEquals("9999", read.getLabel());
+        assertThat(read.getReachableNodes(), hasSize(10000));
+        assertThat(read.getSortedNodes().get(0).getLabel(), equalTo("0"));
+    }
+
     @Test
     public void testDependencySolverSerialization() throws Exception {
         BindingFunctionBuilder b = new BindingFunctionBuilder();
@@ -25,6 +25,7 @@ import com.google.common.collect.Maps;
 import org.junit.Test;
 
 import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -104,6 +105,36 @@ public class TestDAGNode {
                    containsInAnyOrder(foo, bar, blatz, head));
     }
 
+    @Test
+    public void testSubgraphSharesIndex() {
+        DAGNode<String,String> foo = DAGNode.singleton("foo");
+        DAGNode<String,String> bar = DAGNode.<String,String>newBuilder("bar")
+                                            .addEdge(foo, "wombat")
+                                            .build();
+        DAGNode<String,String> blatz = DAGNode.<String,String>newBuilder("blatz")
+                                              .addEdge(foo, "skunk")
+                                              .build();
+        DAGNode<String,String> head = DAGNode.<String,String>newBuilder("head")
+                                             .addEdge(bar, "wumpus")
+                                             .addEdge(blatz, "woozle")
+                                             .build();
+
+        // index the whole graph first, so the subgraphs answer from the head's index
+        assertThat(head.getSortedNodes(), hasSize(4));
+
+        assertThat(bar.getSortedNodes(), contains(foo, bar));
+        assertThat(bar.getReachableNodes(), containsInAnyOrder(foo, bar));
+        assertThat(bar.getReachableNodes().contains(blatz), equalTo(false));
+        assertThat(bar.getReachableNodes().contains(head), equalTo(false));
+        assertThat(bar.getIncomingEdges(foo),
+                   contains(DAGEdge.create(bar, foo, "wombat")));
+        assertThat(bar.getIncomingEdges(blatz), hasSize(0));
+        assertThat(foo.getReachableNodes(), contains(foo));
+        assertThat(foo.getIncomingEdges(foo), hasSize(0));
+        assertThat(bar.getIncomingEdges(foo), hasSize(1));
+        assertThat(head.getIncomingEdges(foo), hasSize(2));
+    }
+
     @Test
     public void testReplaceSingleNode() {
         DAGNode<String,String> foo = DAGNode.singleton("foo");
@@ -230,6 +261,63 @@ public class TestDAGNode {
                    notNullValue());
     }
 
+    /**
+     * Build a ladder of diamonds: each level has two nodes that both point to the level below.
+     * There are exponentially many paths to the bottom, and the graph is too deep to traverse
+     * recursively.
+     */
+    private DAGNode<String,String> makeDiamondLadder(DAGNode<String,String> bottom, int levels) {
+        DAGNode<String,String> node = bottom;
+        for (int i = 0; i < levels; i++) {
+            DAGNode<String,String> left = DAGNode.<String,String>newBuilder("left" + i)
+                                                 .addEdge(node, "down")
+                                                 .build();
+            DAGNode<String,String> right = DAGNode.<String,String>newBuilder("right" + i)
+                                                  .addEdge(node, "down")
+                                                  .build();
+            node = DAGNode.<String,String>newBuilder("top" + i)
+                          .addEdge(left, "left")
+                          .addEdge(right, "right")
+                          .build();
+        }
+        return node;
+    }
+
+    @Test(timeout = 10000)
+    public void testDiamondLadderTraversals() {
+        DAGNode<String,String> foo = DAGNode.singleton("foo");
+        DAGNode<String,String> graph = makeDiamondLadder(foo, 3333);
+        assertThat(graph.getSortedNodes(), hasSize(3333 * 3 + 1));
+        assertThat(graph.getSortedNodes().get(0), sameInstance(foo));
+        assertThat(graph.getIncomingEdges(foo), hasSize(2));
+
+        DAGNode<String,String> bar = DAGNode.singleton("bar");
+        DAGNode<String,String> replaced = graph.replaceNode(foo, bar, Maps.<DAGNode<String,String>,DAGNode<String,String>>newHashMap());
+        assertThat(replaced.getReachableNodes(), hasSize(3333 * 3 + 1));
+        assertThat(replaced.getReachableNodes(), hasItem(bar));
+        assertThat(replaced.getReachableNodes(), not(hasItem(foo)));
+
+        DAGNode<String,String> transformed =
+                graph.transformEdges(new Function<DAGEdge<String, String>, DAGEdge<String, String>>() {
+                    @Nullable
+                    @Override
+                    public DAGEdge<String, String> apply(@Nullable DAGEdge<String, String> input) {
+                        if (input != null && input.getTail().getLabel().equals("foo")) {
+                            return DAGEdge.create(input.getHead(), input.getTail(), "bottom");
+                        } else {
+                            return null;
+                        }
+                    }
+                });
+        assertThat(transformed, not(sameInstance(graph)));
+        // shared nodes are transformed once, so the result is still a ladder
+        assertThat(transformed.getReachableNodes(), hasSize(3333 * 3 + 1));
+        assertThat(transformed.getIncomingEdges(foo), hasSize(2));
+        for (DAGEdge<String,String> e: transformed.getIncomingEdges(foo)) {
+            assertThat(e.getLabel(), equalTo("bottom"));
+        }
+    }
+
     @Test
     public void testFindBFSSingletonYes() {
         DAGNode<String,String> foo = DAGNode.singleton("foo");
@@ -332,4 +420,32 @@ public class TestDAGNode {
         assertThat(edge.getLabel(),
                    equalTo("goodbye"));
     }
+
+    @Test
+    public void testAdoptedIndexDoesNotPinRoot() {
+        DAGNode<String,String> foo = DAGNode.singleton("foo");
+        DAGNode<String,String> bar = DAGNode.<String,String>newBuilder("bar")
+                                            .addEdge(foo, "wombat")
+                                            .build();
+        WeakReference<DAGNode<String,String>> root = queryThroughRoot(bar);
+        for (int i = 0; i < 50 && root.get() != null; i++) {
+            System.gc();
+        }
+        assertThat(root.get(), nullValue());
+        assertThat(bar.getReachableNodes(), containsInAnyOrder(foo, bar));
+        assertThat(bar.getIncomingEdges(foo), hasSize(1));
+        assertThat(foo.getIncomingEdges(foo), hasSize(0));
+    }
+
+    /**
+     * Query a graph through a new root, so the subgraph adopts its index.
+     */
+    private WeakReference<DAGNode<String,String>> queryThroughRoot(DAGNode<String,String> sub) {
+        DAGNode<String,String> root = DAGNode.<String,String>newBuilder("root")
+                                             .addEdge(sub, "bat")
+                                             .build();
+        assertThat(root.getReachableNodes(), hasSize(3));
+        assertThat(sub.getReachableNodes(), hasSize(2));
+        return new WeakReference<DAGNode<String, String>>(root);
+    }
 }
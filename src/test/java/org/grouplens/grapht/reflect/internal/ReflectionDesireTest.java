@@ -126,6 +126,17 @@ public class ReflectionDesireTest {
         Assert.assertNotNull(restricted);
     }
     
+    @Test
+    public void testDesiresAreCached() throws Exception {
+        List<ReflectionDesire> first = ReflectionDesire.getDesires(ReqB.class);
+        long hits = ReflectionDesire.getDesireCacheStats().hitCount();
+        List<ReflectionDesire> second = ReflectionDesire.getDesires(ReqB.class);
+
+        Assert.assertSame(first, second);
+        Assert.assertTrue(ReflectionDesire.getDesireCacheStats().hitCount() > hits);
+        Assert.assertTrue(ReflectionDesire.getDesireCacheStats().loadSuccessCount() > 0);
+    }
+    
     private ReflectionDesire getDefaultDesire(Object methodOrCtorParam, List<ReflectionDesire> desires) throws SolverException {
         BindingResult result = null;
         for (ReflectionDesire d: desires) {
@@ -34,6 +34,7 @@ import org.grouplens.grapht.reflect.InjectionPoint;
 import org.grouplens.grapht.reflect.internal.types.*;
 import org.grouplens.grapht.solver.DefaultDesireBindingFunction;
 import org.grouplens.grapht.solver.DefaultInjector;
+import org.grouplens.grapht.solver.DependencySolver;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -73,6 +74,11 @@ public class ReflectionInjectionTest {
         assertThat(backEdges, hasSize(1));
         DAGEdge<Component, Dependency> edge = backEdges.iterator().next();
         Assert.assertSame(anode, edge.getTail());
+        // and it can be looked up by its head and desire
+        DependencySolver solver = ((DefaultInjector) i).getSolver();
+        Desire desire = edge.getLabel().getInitialDesire();
+        Assert.assertSame(anode, solver.getBackEdge(pnode, desire));
+        Assert.assertNull(solver.getBackEdge(bnode, desire));
     }
     
     @Test
@@ -18,6 +18,7 @@
  */
 package org.grouplens.grapht.reflect.internal;
 
+import org.grouplens.grapht.InstantiationBackend;
 import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.reflect.InjectionPoint;
 import org.grouplens.grapht.reflect.Satisfaction;
@@ -96,6 +97,31 @@ public class SatisfactionTest {
         Assert.assertEquals(10, c.getIntValue());
     }
     
+    @Test
+    public void testClassSatisfactionMethodHandleProvider() throws Exception {
+        InterfaceA a1 = new TypeA();
+        TypeA a2 = new TypeA();
+        InterfaceB b1 = new TypeB();
+        TypeB b2 = new TypeB();
+
+        MockProviderSource providers = new MockProviderSource();
+        providers.add(TypeC.CONSTRUCTOR, new InstanceProvider<Integer>(10));
+        providers.add(TypeC.INTERFACE_A, new InstanceProvider<InterfaceA>(a1));
+        providers.add(TypeC.TYPE_A, new InstanceProvider<TypeA>(a2));
+        providers.add(TypeC.INTERFACE_B, new InstanceProvider<InterfaceB>(b1));
+        providers.add(TypeC.TYPE_B, new InstanceProvider<TypeB>(b2));
+
+        Provider<?> provider = new ClassSatisfaction(TypeC.class).makeProvider(providers, InstantiationBackend.METHOD_HANDLES);
+        TypeC c = (TypeC) provider.get();
+
+        Assert.assertSame(a1, c.getInterfaceA());
+        Assert.assertSame(a2, c.getTypeA());
+        Assert.assertSame(b1, c.getInterfaceB());
+        Assert.assertSame(b2, c.getTypeB());
+        Assert.assertEquals(10, c.getIntValue());
+        Assert.assertNotSame(c, provider.get());
+    }
+    
     @Test
     public void testInstanceSatisfactionDesires() throws Exception {
         TypeC c = new TypeC(4);
@@ -33,6 +33,8 @@ import org.grouplens.grapht.reflect.*;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.inject.Inject;
+import javax.inject.Provider;
 import javax.inject.Qualifier;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -40,6 +42,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
@@ -320,6 +323,39 @@ public class DependencySolverTest {
         Assert.assertEquals(or2, rootNode.getOutgoingEdges().iterator().next().getTail().getLabel().getSatisfaction());
     }
     
+    @Test
+    public void testRepeatedDesireInDistinctContexts() throws Exception {
+        // Test that a desire seen again in a context only a pattern can tell apart
+        // is not resolved from the subtree of its first occurrence
+        Desire d1 = new MockDesire();
+        Desire d2 = new MockDesire();
+        Desire dx = new MockDesire();
+        Satisfaction r1 = new MockSatisfaction(A.class, Arrays.asList(d1, d2));
+        Satisfaction sb = new MockSatisfaction(B.class, Arrays.asList(dx));
+        Satisfaction sc = new MockSatisfaction(C.class, Arrays.asList(dx));
+        Satisfaction sd = new MockSatisfaction(D.class);
+        Satisfaction se = new MockSatisfaction(E.class);
+
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> bindings = ImmutableListMultimap.builder();
+        bindings.putAll(ContextPattern.any(),
+                        new MockBindRule(d1, new MockDesire(sb)),
+                        new MockBindRule(d2, new MockDesire(sc)),
+                        new MockBindRule(dx, new MockDesire(sd)));
+        bindings.put(ContextPattern.subsequence(ContextElements.matchType(C.class)),
+                     new MockBindRule(dx, new MockDesire(se)));
+
+        Desire rootDesire = new MockDesire(r1);
+        DependencySolver r = createSolver(bindings.build());
+        r.resolve(rootDesire);
+        DAGNode<Component, Dependency> rootNode = getRoot(r, rootDesire);
+
+        Assert.assertEquals(5 + 1, r.getGraph().getReachableNodes().size()); // add one for synthetic root
+        DAGNode<Component, Dependency> nb = rootNode.getOutgoingEdgeWithLabel(Dependency.hasInitialDesire(d1)).getTail();
+        DAGNode<Component, Dependency> nc = rootNode.getOutgoingEdgeWithLabel(Dependency.hasInitialDesire(d2)).getTail();
+        Assert.assertEquals(sd, nb.getOutgoingEdges().iterator().next().getTail().getLabel().getSatisfaction());
+        Assert.assertEquals(se, nc.getOutgoingEdges().iterator().next().getTail().getLabel().getSatisfaction());
+    }
+
     @Test
     public void testContextClosenessMatchSuccess() throws Exception {
         // Test that between two context bind rules, the closest is chosen
@@ -904,6 +940,132 @@ public class DependencySolverTest {
                    hasSize(2));
     }
     
+    @Test
+    public void testResolveAllMergeSuccess() throws Exception {
+        // Test that a batch resolve builds the same graph as separate resolve() calls
+        Desire a1 = new MockDesire();
+        Desire d1 = new MockDesire();
+        Desire d2 = new MockDesire();
+        Satisfaction sa = new MockSatisfaction(A.class, Arrays.asList(a1));
+        Satisfaction sap = new MockSatisfaction(Ap.class, Arrays.asList(a1));
+        Satisfaction sd = new MockSatisfaction(D.class, Arrays.asList(d1, d2));
+        Satisfaction sb = new MockSatisfaction(B.class);
+        Satisfaction sc = new MockSatisfaction(C.class);
+
+        Desire da = new MockDesire(sa);
+        Desire dap = new MockDesire(sap);
+
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> bindings = ImmutableListMultimap.builder();
+        bindings.putAll(ContextPattern.any(),
+                        new MockBindRule(a1, new MockDesire(sd)),
+                        new MockBindRule(d1, new MockDesire(sb)),
+                        new MockBindRule(d2, new MockDesire(sc)));
+
+        DependencySolver r = createSolver(bindings.build());
+        r.resolveAll(Arrays.asList(da, dap));
+
+        DAGNode<Component, Dependency> root = r.getGraph();
+        Assert.assertEquals(5 + 1, root.getReachableNodes().size()); // add one for synthetic root
+        Assert.assertEquals(2, root.getOutgoingEdges().size()); // da and dap
+
+        DAGNode<Component, Dependency> na = root.getOutgoingEdgeWithLabel(Dependency.hasInitialDesire(da)).getTail();
+        DAGNode<Component, Dependency> nap = root.getOutgoingEdgeWithLabel(Dependency.hasInitialDesire(dap)).getTail();
+        Assert.assertNotSame(na, nap);
+        Assert.assertSame(na.getOutgoingEdgeWithLabel(Dependency.hasInitialDesire(a1)).getTail(),
+                          nap.getOutgoingEdgeWithLabel(Dependency.hasInitialDesire(a1)).getTail());
+
+        // and that a later resolve() still shares the batch's nodes
+        DependencySolver r2 = createSolver(bindings.build());
+        r2.resolve(da);
+        r2.resolve(dap);
+        Assert.assertEquals(r2.getGraph().getReachableNodes().size(), root.getReachableNodes().size());
+    }
+
+    @Test
+    public void testParallelResolutionMatchesSequential() throws Exception {
+        // Test that resolving dependencies in parallel builds the same graph
+        Desire a1 = new MockDesire();
+        Desire a2 = new MockDesire();
+        Desire a3 = new MockDesire();
+        Desire b1 = new MockDesire();
+        Desire b2 = new MockDesire();
+        Satisfaction sa = new MockSatisfaction(A.class, Arrays.asList(a1, a2, a3));
+        Satisfaction sb = new MockSatisfaction(B.class, Arrays.asList(b1, b2));
+        Satisfaction sc = new MockSatisfaction(C.class, Arrays.asList(b1, b2));
+        Satisfaction sd = new MockSatisfaction(D.class);
+        Satisfaction se = new MockSatisfaction(E.class);
+        Satisfaction sf = new MockSatisfaction(F.class, Arrays.asList(b2));
+
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> bindings = ImmutableListMultimap.builder();
+        bindings.putAll(ContextPattern.any(),
+                        new MockBindRule(a1, new MockDesire(sb)),
+                        new MockBindRule(a2, new MockDesire(sc)),
+                        new MockBindRule(a3, new MockDesire(sf)),
+                        new MockBindRule(b1, new MockDesire(sd)),
+                        new MockBindRule(b2, new MockDesire(se)));
+        bindings.put(ContextPattern.subsequence(ContextElements.matchType(C.class)),
+                     new MockBindRule(b2, new MockDesire(sd)));
+        ListMultimap<ContextMatcher, BindRule> rules = bindings.build();
+
+        Desire rootDesire = new MockDesire(sa);
+        DependencySolver seq = createSolver(rules);
+        seq.resolve(rootDesire);
+        DependencySolver par = DependencySolver.newBuilder()
+                                               .addBindingFunction(new RuleBasedBindingFunction(rules))
+                                               .setDefaultPolicy(CachePolicy.NO_PREFERENCE)
+                                               .setParallelism(4)
+                                               .build();
+        par.resolve(rootDesire);
+
+        Assert.assertEquals(seq.getGraph().getReachableNodes().size(),
+                            par.getGraph().getReachableNodes().size());
+        assertSameGraph(seq.getGraph(), par.getGraph());
+    }
+
+    @Test
+    public void testParallelProviderCycleMatchesSequential() throws Exception {
+        // Test that siblings sharing a deferred provider resolve to the sequential graph
+        Desire root = Desires.create(null, CycleRoot.class, false);
+        DependencySolver seq = DependencySolver.newBuilder()
+                                               .addBindingFunction(new ProviderBindingFunction())
+                                               .addBindingFunction(DefaultDesireBindingFunction.create())
+                                               .build();
+        seq.resolve(root);
+        Assert.assertEquals(1, seq.getBackEdges().size());
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 20; i++) {
+                DependencySolver par = DependencySolver.newBuilder()
+                                                       .addBindingFunction(new ProviderBindingFunction())
+                                                       .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                       .setForkJoinPool(pool)
+                                                       .build();
+                par.resolve(root);
+                Assert.assertEquals(seq.getGraph().getReachableNodes().size(),
+                                    par.getGraph().getReachableNodes().size());
+                assertSameGraph(seq.getGraph(), par.getGraph());
+                Assert.assertEquals(1, par.getBackEdges().size());
+                DAGEdge<Component, Dependency> seqBack = seq.getBackEdges().iterator().next();
+                DAGEdge<Component, Dependency> parBack = par.getBackEdges().iterator().next();
+                Assert.assertEquals(seqBack.getLabel(), parBack.getLabel());
+                Assert.assertEquals(seqBack.getHead().getLabel(), parBack.getHead().getLabel());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void assertSameGraph(DAGNode<Component, Dependency> expected, DAGNode<Component, Dependency> actual) {
+        Assert.assertEquals(expected.getLabel(), actual.getLabel());
+        Assert.assertEquals(expected.getOutgoingEdges().size(), actual.getOutgoingEdges().size());
+        for (DAGEdge<Component, Dependency> e: expected.getOutgoingEdges()) {
+            DAGEdge<Component, Dependency> a = actual.getOutgoingEdgeWithLabel(Predicates.equalTo(e.getLabel()));
+            Assert.assertNotNull(a);
+            assertSameGraph(e.getTail(), a.getTail());
+        }
+    }
+
     @Test
     public void testMultipleRequestsNoMergeSuccess() throws Exception {
         // Test that multiple requests will keep nodes separate as required
@@ -1212,4 +1374,25 @@ public class DependencySolverTest {
     private static class Ap extends A {}
     private static class Bp extends B {}
     private static class Cp extends C {}
+
+    public static class CycleRoot {
+        @Inject
+        public CycleRoot(Cycle1 c1, Cycle2 c2, Cycle3 c3, Cycle4 c4) {}
+    }
+    public static class Cycle1 {
+        @Inject
+        public Cycle1(Provider<CycleRoot> root) {}
+    }
+    public static class Cycle2 {
+        @Inject
+        public Cycle2(Provider<CycleRoot> root) {}
+    }
+    public static class Cycle3 {
+        @Inject
+        public Cycle3(Provider<CycleRoot> root) {}
+    }
+    public static class Cycle4 {
+        @Inject
+        public Cycle4(Provider<CycleRoot> root) {}
+    }
 }
@@ -58,4 +58,17 @@ public class DesireChainTest {
                    equalTo((List<Desire>) DesireChain.singleton(d1)));
         assertThat(chain, contains(d1, d2));
     }
+
+    @Test
+    public void testAppliedRulesShared() {
+        Desire d1 = new MockDesire(InputStream.class, null, null);
+        Desire d2 = new MockDesire(FileInputStream.class, null, null);
+        DesireChain first = DesireChain.singleton(d1);
+        DesireChain chain = first.extend(d2);
+        BindRule rule = new MockBindRule(d1, d2);
+        chain.getAppliedRules().add(rule);
+        assertThat(first.getAppliedRules(), contains(rule));
+        // a new chain for the same desire starts afresh
+        assertThat(DesireChain.singleton(d1).getAppliedRules(), hasSize(0));
+    }
 }
@@ -0,0 +1,200 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2010-2012 Regents of the University of Minnesota and contributors
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.util;
+
+import org.grouplens.grapht.InjectionException;
+import org.junit.Test;
+
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MemoizingProviderTest {
+    @Test
+    public void testMemoizes() {
+        final AtomicInteger calls = new AtomicInteger();
+        MemoizingProvider<Object> provider = new MemoizingProvider<Object>(new Provider<Object>() {
+            @Override
+            public Object get() {
+                calls.incrementAndGet();
+                return new Object();
+            }
+        });
+        Object obj = provider.get();
+        assertThat(provider.get(), sameInstance(obj));
+        assertThat(calls.get(), equalTo(1));
+    }
+
+    @Test
+    public void testSelfCycleFails() {
+        final List<MemoizingProvider<Object>> self = new ArrayList<MemoizingProvider<Object>>();
+        self.add(new MemoizingProvider<Object>(new Provider<Object>() {
+            @Override
+            public Object get() {
+                return self.get(0).get();
+            }
+        }));
+        try {
+            self.get(0).get();
+            fail("constructing a self-dependent instance should fail");
+        } catch (InjectionException e) {
+            /* expected */
+        }
+    }
+
+    @Test
+    public void testSelfCycleWithGenericProviderFails() {
+        final List<MemoizingProvider<Object>> self = new ArrayList<MemoizingProvider<Object>>();
+        self.add(new MemoizingProvider<Object>(new GenericProvider<Object>(self)));
+        try {
+            self.get(0).get();
+            fail("constructing a self-dependent instance should fail");
+        } catch (InjectionException e) {
+            /* expected, even though the provided type cannot be inferred */
+        }
+    }
+
+    private static class GenericProvider<T> implements Provider<T> {
+        private final List<MemoizingProvider<T>> target;
+
+        GenericProvider(List<MemoizingProvider<T>> target) {
+            this.target = target;
+        }
+
+        @Override
+        public T get() {
+            return target.get(0).get();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testIndependentConstructionIsConcurrent() throws Exception {
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final MemoizingProvider<Object> slow = new MemoizingProvider<Object>(new Provider<Object>() {
+            @Override
+            public Object get() {
+                slowStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return "slow";
+            }
+        });
+        MemoizingProvider<Object> fast = new MemoizingProvider<Object>(new Provider<Object>() {
+            @Override
+            public Object get() {
+                return "fast";
+            }
+        });
+
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> slowResult = exec.submit(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return slow.get();
+                }
+            });
+            slowStarted.await();
+            // the slow construction does not block unrelated providers
+            assertThat(fast.get(), equalTo((Object) "fast"));
+            release.countDown();
+            assertThat(slowResult.get(), equalTo((Object) "slow"));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testCrossThreadCycleFailsOnce() throws Exception {
+        final CountDownLatch aStarted = new CountDownLatch(1);
+        final CountDownLatch bWaiting = new CountDownLatch(1);
+        final AtomicReference<Thread> bThread = new AtomicReference<Thread>();
+        final AtomicInteger aInvocations = new AtomicInteger();
+        final List<MemoizingProvider<Object>> providers = new ArrayList<MemoizingProvider<Object>>();
+        providers.add(new MemoizingProvider<Object>(new Provider<Object>() {
+            @Override
+            public Object get() {
+                if (aInvocations.incrementAndGet() > 1) {
+                    return "a";
+                }
+                aStarted.countDown();
+                // let B's thread start waiting for this instance before closing the cycle
+                awaitQuietly(bWaiting);
+                while (bThread.get().getState() != Thread.State.WAITING) {
+                    Thread.yield();
+                }
+                return providers.get(1).get();
+            }
+        }, String.class));
+        providers.add(new MemoizingProvider<Object>(new Provider<Object>() {
+            @Override
+            public Object get() {
+                bThread.set(Thread.currentThread());
+                awaitQuietly(aStarted);
+                bWaiting.countDown();
+                return "b" + providers.get(0).get();
+            }
+        }, String.class));
+
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (final MemoizingProvider<Object> provider: providers) {
+                results.add(exec.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        return provider.get();
+                    }
+                }));
+            }
+            // A's thread closed the cycle, so it fails and B's construction goes on
+            try {
+                results.get(0).get();
+                fail("cyclic construction should fail");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause(), instanceOf(InjectionException.class));
+                assertThat(e.getCause().getMessage(), containsString("cyclic"));
+            }
+            assertThat(results.get(1).get(), equalTo((Object) "ba"));
+            assertThat(providers.get(0).get(), equalTo((Object) "a"));
+            assertThat(aInvocations.get(), equalTo(2));
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}